@@ -30,9 +30,65 @@ dependencies {
     minecraft("com.mojang:minecraft:${project.property("minecraft_version")}")
     implementation("net.fabricmc:fabric-loader:${project.property("loader_version")}")
     implementation("net.fabricmc.fabric-api:fabric-api:${project.property("fabric_version")}")
+
+    // Embedded database storage backend, bundled in the mod jar
+    implementation("com.h2database:h2:${project.property("h2_version")}")
+    include("com.h2database:h2:${project.property("h2_version")}")
+
+    // Runs JUnit tests inside Fabric Loader, so mixins apply and the game can be bootstrapped
+    testImplementation("net.fabricmc:fabric-loader-junit:${project.property("loader_version")}")
 }
 
 tasks {
+    test {
+        useJUnitPlatform {
+            excludeTags("benchmark")
+        }
+    }
+
+    // Timing harnesses, excluded from the regular test run: ./gradlew benchmark
+    register<Test>("benchmark") {
+        description = "Runs the slot query benchmarks and prints their timings."
+        group = "verification"
+        testClassesDirs = sourceSets["test"].output.classesDirs
+        classpath = sourceSets["test"].runtimeClasspath
+        useJUnitPlatform {
+            includeTags("benchmark")
+        }
+        testLogging {
+            showStandardStreams = true
+        }
+    }
+
+    // Runs the offline data tool from the built jar with nothing else on the classpath, so a
+    // game class creeping into it fails the build: ./gradlew toolSmokeTest
+    val toolMainClass = "com.reservedslots.tool.ReservedSlotsDataTool"
+    val toolSmokeDir = layout.buildDirectory.dir("tool-smoke/reservedslots")
+
+    register<JavaExec>("toolSmokeConvert") {
+        description = "Converts a legacy data file with the data tool from the mod jar alone."
+        group = "verification"
+        classpath = files(jar)
+        mainClass = toolMainClass
+        args("convert", file("src/test/resources/tool-smoke/reservedslots_data.dat").path, toolSmokeDir.get().asFile.path)
+        doFirst {
+            delete(toolSmokeDir)
+        }
+    }
+
+    register<JavaExec>("toolSmokeTest") {
+        description = "Validates the converted data with the data tool from the mod jar alone."
+        group = "verification"
+        dependsOn("toolSmokeConvert")
+        classpath = files(jar)
+        mainClass = toolMainClass
+        args("validate", toolSmokeDir.get().asFile.path)
+    }
+
+    check {
+        dependsOn("toolSmokeTest")
+    }
+
     processResources {
         inputs.property("version", project.version)
         filesMatching("fabric.mod.json") {
@@ -48,6 +104,10 @@ tasks {
         from("LICENSE") {
             rename { "${it}_${project.base.archivesName.get()}" }
         }
+        // Offline data tool: java -jar reserved-slots.jar stats <world>
+        manifest {
+            attributes("Main-Class" to "com.reservedslots.tool.ReservedSlotsDataTool")
+        }
     }
 }
 
@@ -0,0 +1,108 @@
+package com.reservedslots;
+
+import net.fabricmc.loader.api.FabricLoader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * Server-side settings, read from {@code config/reservedslots.properties}.
+ * Missing keys fall back to their defaults, and the file is written with all
+ * defaults the first time the mod starts.
+ */
+public final class ReservedSlotsConfig {
+    private static final String FILE_NAME = "reservedslots.properties";
+
+    /**
+     * Where player layouts are stored.
+     */
+    public enum StorageBackend {
+        FILE,   // One file per player, keyed by name
+        H2      // Embedded database, keyed by UUID
+    }
+
+    // How many offline players' layouts ReservedSlotsPersistentState keeps in memory
+    private static int layoutCacheSize = 1024;
+    private static StorageBackend storageBackend = StorageBackend.FILE;
+    // Slot toggles a player may send per second, and in one burst
+    private static int toggleRate = 10;
+    private static int toggleBurst = 20;
+
+    private ReservedSlotsConfig() {
+    }
+
+    public static int layoutCacheSize() {
+        return layoutCacheSize;
+    }
+
+    public static StorageBackend storageBackend() {
+        return storageBackend;
+    }
+
+    public static int toggleRate() {
+        return toggleRate;
+    }
+
+    public static int toggleBurst() {
+        return toggleBurst;
+    }
+
+    public static void load() {
+        Path file = FabricLoader.getInstance().getConfigDir().resolve(FILE_NAME);
+        Properties properties = new Properties();
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file)) {
+                properties.load(reader);
+            } catch (IOException e) {
+                ReservedSlotsMod.LOGGER.error("Failed to read {}, using defaults", file, e);
+            }
+        }
+
+        layoutCacheSize = getInt(properties, "layoutCacheSize", layoutCacheSize, 16);
+        storageBackend = getEnum(properties, "storageBackend", storageBackend);
+        toggleRate = getInt(properties, "toggleRate", toggleRate, 1);
+        toggleBurst = getInt(properties, "toggleBurst", toggleBurst, 1);
+
+        if (!Files.exists(file)) {
+            properties.setProperty("layoutCacheSize", Integer.toString(layoutCacheSize));
+            properties.setProperty("storageBackend", storageBackend.name().toLowerCase());
+            properties.setProperty("toggleRate", Integer.toString(toggleRate));
+            properties.setProperty("toggleBurst", Integer.toString(toggleBurst));
+            try (Writer writer = Files.newBufferedWriter(file)) {
+                properties.store(writer, "Reserved Slots server settings");
+            } catch (IOException e) {
+                ReservedSlotsMod.LOGGER.warn("Failed to write default {}", file, e);
+            }
+        }
+    }
+
+    private static <E extends Enum<E>> E getEnum(Properties properties, String key, E defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Enum.valueOf(defaultValue.getDeclaringClass(), value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            ReservedSlotsMod.LOGGER.warn("Invalid value '{}' for {} in {}, using {}", value, key, FILE_NAME, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    private static int getInt(Properties properties, String key, int defaultValue, int min) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Math.max(min, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            ReservedSlotsMod.LOGGER.warn("Invalid value '{}' for {} in {}, using {}", value, key, FILE_NAME, defaultValue);
+            return defaultValue;
+        }
+    }
+}
@@ -1,16 +1,28 @@
 package com.reservedslots;
 
+import com.reservedslots.common.StoredLayout;
+import com.reservedslots.network.LayoutHandshake;
 import com.reservedslots.network.ReservedSlotPackets;
+import com.reservedslots.network.SlotSyncOutbox;
+import com.reservedslots.network.ToggleThrottle;
+import com.reservedslots.server.LayoutPrefetch;
 import com.reservedslots.server.ReservedSlotManager;
+import com.reservedslots.server.ReservedSlotsCommands;
 import com.reservedslots.server.ReservedSlotsPersistentState;
 import net.fabricmc.api.ModInitializer;
+import net.fabricmc.fabric.api.entity.event.v1.ServerPlayerEvents;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerConfigurationConnectionEvents;
 import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
-import net.minecraft.nbt.CompoundTag;
+import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerPlayer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public class ReservedSlotsMod implements ModInitializer {
     public static final String MOD_ID = "reservedslots";
     public static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID);
@@ -19,51 +31,76 @@ public class ReservedSlotsMod implements ModInitializer {
     public void onInitialize() {
         LOGGER.info("Initializing Reserved Slots Mod");
         
+        ReservedSlotsConfig.load();
+        
         // Register network packets
         ReservedSlotPackets.register();
         
-        // Register player join event to load and sync reserved slots
+        // Register admin commands
+        ReservedSlotsCommands.register();
+        
+        // Start reading the player's layout as soon as we know who is connecting
+        ServerConfigurationConnectionEvents.CONFIGURE.register((handler, server) -> {
+            LayoutPrefetch.start(server, handler.getOwner());
+        });
+        
+        ServerConfigurationConnectionEvents.DISCONNECT.register((handler, server) -> {
+            LayoutPrefetch.cancel(handler.getOwner().id());
+        });
+        
+        // Register player join event to install and sync the prefetched reserved slots
         ServerPlayConnectionEvents.JOIN.register((handler, sender, server) -> {
             ServerPlayer player = handler.getPlayer();
             String playerName = player.getName().getString();
-            
-            // For offline/single-player mode, use a constant key since player names/UUIDs are random
-            String storageKey = server.isSingleplayer() ? "singleplayer" : playerName;
+            String storageKey = ReservedSlotsPersistentState.storageKey(server, player);
             
             LOGGER.info("Player {} joining with UUID: {} (storage key: {})", playerName, player.getUUID(), storageKey);
             
-            // Load player data from persistent storage
-            ReservedSlotsPersistentState state = ReservedSlotsPersistentState.get(server);
-            CompoundTag playerNbt = state.getPlayerData(storageKey);
-            if (playerNbt != null) {
-                LOGGER.info("Found saved data for storage key: {}", storageKey);
-                ReservedSlotManager.loadPlayerData(player, playerNbt);
-            } else {
-                LOGGER.info("No saved data found for storage key: {}", storageKey);
-            }
-            
-            // Sync to client
-            ReservedSlotManager.syncToPlayer(player);
+            // Loads and syncs without touching the disk on this thread
+            LayoutPrefetch.install(server, player);
         });
         
         // Register player disconnect event to save reserved slots
         ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> {
             ServerPlayer player = handler.getPlayer();
             String playerName = player.getName().getString();
-            
-            // For offline/single-player mode, use a constant key since player names/UUIDs are random
-            String storageKey = server.isSingleplayer() ? "singleplayer" : playerName;
+            String storageKey = ReservedSlotsPersistentState.storageKey(server, player);
             
             LOGGER.info("Player {} disconnecting with UUID: {} (storage key: {})", playerName, player.getUUID(), storageKey);
             
+            if (LayoutPrefetch.isLoading(player.getUUID())) {
+                // Their stored layout never arrived, so there's nothing newer to save
+                LayoutPrefetch.clear(player.getUUID());
+                ReservedSlotManager.clearPlayerData(player.getUUID());
+                SlotSyncOutbox.clear(player.getUUID());
+                LayoutHandshake.clear(player.getUUID());
+                ToggleThrottle.clear(player.getUUID());
+                return;
+            }
+            
             // Save player data to persistent storage
-            CompoundTag playerNbt = new CompoundTag();
-            ReservedSlotManager.savePlayerData(player, playerNbt);
+            StoredLayout layout = ReservedSlotManager.snapshotPlayerData(player);
             
             LOGGER.info("Saving data for storage key: {}", storageKey);
             
             ReservedSlotsPersistentState state = ReservedSlotsPersistentState.get(server);
-            state.setPlayerData(storageKey, playerNbt);
+            state.setPlayerData(storageKey, layout);
+            
+            // Persisted - drop the in-memory layout so the map doesn't grow with every player ever seen
+            ReservedSlotManager.clearPlayerData(player.getUUID());
+            SlotSyncOutbox.clear(player.getUUID());
+            LayoutHandshake.clear(player.getUUID());
+            ToggleThrottle.clear(player.getUUID());
+        });
+        
+        // A respawned player gets a fresh Inventory; carry the reservation flag over
+        ServerPlayerEvents.COPY_FROM.register((oldPlayer, newPlayer, alive) -> {
+            ReservedSlotManager.updateActiveFlag(newPlayer);
+        });
+        
+        // Open storage (legacy migration, journal replay) before anyone can join
+        ServerLifecycleEvents.SERVER_STARTING.register(server -> {
+            ReservedSlotsPersistentState.get(server);
         });
         
         // Register server events
@@ -71,26 +108,50 @@ public class ReservedSlotsMod implements ModInitializer {
             LOGGER.info("Reserved Slots Mod ready on server");
         });
         
-        // Clear all server-side cache when server stops (world change in single-player)
+        // Flush online players' layouts along with every world save / autosave
+        ServerLifecycleEvents.AFTER_SAVE.register((server, flush, force) -> {
+            saveOnlinePlayers(server);
+        });
+        
+        // A failed journal write leaves recent toggles only in memory; save them now
+        // instead of waiting for the next autosave
+        ServerTickEvents.END_SERVER_TICK.register(server -> {
+            if (ReservedSlotsPersistentState.get(server).journalFailed()) {
+                LOGGER.warn("Slot journal write failed, saving all online players");
+                saveOnlinePlayers(server);
+            }
+        });
+        
         ServerLifecycleEvents.SERVER_STOPPING.register(server -> {
             LOGGER.info("Server stopping, saving all player data");
-            
-            // Save all active players before clearing
-            for (ServerPlayer player : server.getPlayerList().getPlayers()) {
-                String playerName = player.getName().getString();
-                
-                // For offline/single-player mode, use a constant key
-                String storageKey = server.isSingleplayer() ? "singleplayer" : playerName;
-                
-                CompoundTag playerNbt = new CompoundTag();
-                ReservedSlotManager.savePlayerData(player, playerNbt);
-                
-                ReservedSlotsPersistentState state = ReservedSlotsPersistentState.get(server);
-                state.setPlayerData(storageKey, playerNbt);
-            }
-            
+            saveOnlinePlayers(server);
+        });
+        
+        // Clear all server-side cache when server stops (world change in single-player).
+        // Done once the server has fully stopped so disconnects during shutdown are still saved.
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
             ReservedSlotManager.clearAllPlayerData();
+            LayoutPrefetch.clearAll();
+            SlotSyncOutbox.clearAll();
+            LayoutHandshake.clearAll();
+            ToggleThrottle.clearAll();
             ReservedSlotsPersistentState.clearCache();
         });
     }
+
+    /**
+     * Writes the layouts of all online players to persistent storage as one batch.
+     */
+    private static void saveOnlinePlayers(MinecraftServer server) {
+        Map<String, StoredLayout> batch = new HashMap<>();
+        for (ServerPlayer player : server.getPlayerList().getPlayers()) {
+            if (LayoutPrefetch.isLoading(player.getUUID())) {
+                continue; // Still empty in memory; the stored layout is current
+            }
+            batch.put(ReservedSlotsPersistentState.storageKey(server, player), ReservedSlotManager.snapshotPlayerData(player));
+        }
+        
+        // Also retires the toggle journal covered by this save
+        ReservedSlotsPersistentState.get(server).compactJournal(batch);
+    }
 }
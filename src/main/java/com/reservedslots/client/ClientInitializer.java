@@ -2,6 +2,9 @@ package com.reservedslots.client;
 
 import com.mojang.blaze3d.platform.InputConstants;
 import com.reservedslots.ReservedSlotsMod;
+import com.reservedslots.common.PlayerSlotLayout;
+import com.reservedslots.common.ReservedSlotData;
+import com.reservedslots.common.SlotState;
 import com.reservedslots.network.ClientSlotDataCache;
 import com.reservedslots.network.ReservedSlotPackets;
 import net.fabricmc.api.ClientModInitializer;
@@ -25,6 +28,13 @@ import org.lwjgl.glfw.GLFW;
  */
 public class ClientInitializer implements ClientModInitializer {
     private static KeyMapping toggleSlotKey;
+    private static int toggleSequence; // Last predicted toggle sent; 0 is never used
+    
+    // Hotbar render plan, rebuilt when ClientSlotDataCache.generation() changes
+    private static final byte[] hotbarStates = new byte[9];           // SlotState ordinals
+    private static final ItemStack[] hotbarGhosts = new ItemStack[9]; // null if no reserved item
+    private static boolean hotbarHasOverlay;
+    private static int hotbarPlanGeneration = -1;
 
     @Override
     public void onInitializeClient() {
@@ -33,9 +43,15 @@ public class ClientInitializer implements ClientModInitializer {
         // Register network packets
         ReservedSlotPackets.registerClient();
         
-        // Clear client cache when disconnecting from a world
+        // Show the layout cached for this server and ask it to confirm or replace it
+        ClientPlayConnectionEvents.JOIN.register((handler, sender, client) -> {
+            ClientLayoutCache.onJoin(client);
+        });
+        
+        // Clear client cache when disconnecting from a world, keeping a copy on disk for next time
         ClientPlayConnectionEvents.DISCONNECT.register((handler, client) -> {
             ReservedSlotsMod.LOGGER.info("Disconnecting from world, clearing client slot cache");
+            ClientLayoutCache.onDisconnect();
             ClientSlotDataCache.clear();
         });
         
@@ -64,15 +80,23 @@ public class ClientInitializer implements ClientModInitializer {
                     }
                 });
                 
-                // Register rendering for this screen
+                // Register rendering for this screen, from a draw list shared with HandledScreenMixin
+                SlotOverlays overlays = new SlotOverlays(handledScreen.getMenu());
+                ((HandledScreenAccessor) screen).setSlotOverlays(overlays);
+                ScreenEvents.beforeExtract(screen).register((scr, extractor, mouseX, mouseY, delta) -> {
+                    if (client.player != null) {
+                        overlays.update(client.player.getInventory());
+                    }
+                });
                 ScreenEvents.afterExtract(screen).register((scr, extractor, mouseX, mouseY, delta) -> {
-                    renderSlotOverlays(extractor, handledScreen);
+                    renderSlotOverlays(extractor, handledScreen, overlays);
                 });
             }
         });
         
         // Register tick event for keybinding handling (when not in a screen)
         ClientTickEvents.END_CLIENT_TICK.register(client -> {
+            ClientSlotDataCache.expirePredictions();
             if (toggleSlotKey.consumeClick()) {
                 ReservedSlotsMod.LOGGER.info("=== TOGGLE KEY PRESSED ===");
                 handleToggleKey(client);
@@ -135,61 +159,74 @@ public class ClientInitializer implements ClientModInitializer {
         ReservedSlotsMod.LOGGER.info("Sending toggle request for slot index {}", slotIndex);
         
         // Send toggle request to server
-        ReservedSlotPackets.sendToggleRequest(slotIndex);
+        sendToggle(client, slotIndex);
+    }
+
+    /**
+     * Sends a toggle request. If the server acknowledges toggles, the result is shown
+     * straight away, following the same rules as ReservedSlotManager.toggleSlot.
+     */
+    private void sendToggle(Minecraft client, int slotIndex) {
+        if (!ReservedSlotPackets.canPredictToggles()) {
+            ReservedSlotPackets.sendToggleRequest(slotIndex);
+            return;
+        }
+        if (++toggleSequence == 0) {
+            toggleSequence = 1;
+        }
+        
+        ItemStack stack = client.player.getInventory().getItem(slotIndex);
+        ClientSlotDataCache.CachedSlotData current = ClientSlotDataCache.getSlotData(slotIndex);
+        ReservedSlotData predicted = current != null ? new ReservedSlotData(current.state, current.item) : new ReservedSlotData();
+        // The server ignores attempts to reserve an empty slot
+        if (PlayerSlotLayout.isValidSlot(slotIndex) && (predicted.getState() != SlotState.NORMAL || !stack.isEmpty())) {
+            predicted.cycleState(stack.getItem());
+            ClientSlotDataCache.predict(slotIndex, predicted.getState(), predicted.getReservedItem(), toggleSequence);
+        }
+        ReservedSlotPackets.sendPredictedToggle(slotIndex, toggleSequence);
     }
 
     /**
      * Renders overlays for reserved and locked slots.
      */
-    private void renderSlotOverlays(GuiGraphicsExtractor extractor, AbstractContainerScreen<?> screen) {
-        Minecraft client = Minecraft.getInstance();
-        if (client.player == null) {
+    private void renderSlotOverlays(GuiGraphicsExtractor extractor, AbstractContainerScreen<?> screen, SlotOverlays overlays) {
+        if (overlays.size() == 0) {
             return;
         }
         
         int screenX = ((HandledScreenAccessor) screen).getX();
         int screenY = ((HandledScreenAccessor) screen).getY();
         
-        int overlaysRendered = 0;
-        for (Slot slot : screen.getMenu().slots) {
-            if (slot.container != client.player.getInventory()) {
-                continue;
-            }
+        for (int entry = 0; entry < overlays.size(); entry++) {
+            Slot slot = overlays.slot(entry);
+            int x = screenX + slot.x;
+            int y = screenY + slot.y;
             
-            int slotIndex = slot.getContainerSlot();
-            ClientSlotDataCache.CachedSlotData data = ClientSlotDataCache.getSlotData(slotIndex);
+            // If slot is empty, draw ghost item with transparency
+            ItemStack ghostStack = overlays.ghost(entry);
+            if (ghostStack != null && slot.getItem().isEmpty()) {
+                // Draw the item at full opacity first
+                extractor.item(ghostStack, x, y);
+                
+                // Draw single black overlay to fade the item (no background darkening)
+                extractor.fill(x, y, x + 16, y + 16, 0x99323232); // Single layer for ghost
+            }
+            // Don't draw any overlay when there's an actual item - let it show normally
             
-            if (data != null && data.state != com.reservedslots.common.SlotState.NORMAL) {
-                overlaysRendered++;
-                int x = screenX + slot.x;
-                int y = screenY + slot.y;
+            // Always draw lock icon for locked slots (must be above everything including ghost overlay)
+            if (overlays.isLocked(entry)) {
+                // Draw a simple padlock shape
+                int lockX = x + 10;
+                int lockY = y + 1;
                 
-                // If slot is empty, draw ghost item with transparency
-                if (slot.getItem().isEmpty() && data.item != null) {
-                    ItemStack ghostStack = new ItemStack(data.item);
-                    // Draw the item at full opacity first
-                    extractor.item(ghostStack, x, y);
-                    
-                    // Draw single black overlay to fade the item (no background darkening)
-                    extractor.fill(x, y, x + 16, y + 16, 0x99323232); // Single layer for ghost
-                }
-                // Don't draw any overlay when there's an actual item - let it show normally
+                // Lock body (small rectangle)
+                extractor.fill(lockX, lockY + 2, lockX + 5, lockY + 6, 0xFF2A2A2A);
+                extractor.fill(lockX + 1, lockY + 3, lockX + 4, lockY + 5, 0xFF9E9E9E);
                 
-                // Always draw lock icon for locked slots (must be above everything including ghost overlay)
-                if (data.state == com.reservedslots.common.SlotState.LOCKED) {
-                    // Draw a simple padlock shape
-                    int lockX = x + 10;
-                    int lockY = y + 1;
-                    
-                    // Lock body (small rectangle)
-                    extractor.fill(lockX, lockY + 2, lockX + 5, lockY + 6, 0xFF2A2A2A);
-                    extractor.fill(lockX + 1, lockY + 3, lockX + 4, lockY + 5, 0xFF9E9E9E);
-                    
-                    // Lock shackle (U shape)
-                    extractor.fill(lockX + 1, lockY, lockX + 2, lockY + 3, 0xFF2A2A2A);
-                    extractor.fill(lockX + 3, lockY, lockX + 4, lockY + 3, 0xFF2A2A2A);
-                    extractor.fill(lockX + 1, lockY, lockX + 4, lockY + 1, 0xFF2A2A2A);
-                }
+                // Lock shackle (U shape)
+                extractor.fill(lockX + 1, lockY, lockX + 2, lockY + 3, 0xFF2A2A2A);
+                extractor.fill(lockX + 3, lockY, lockX + 4, lockY + 3, 0xFF2A2A2A);
+                extractor.fill(lockX + 1, lockY, lockX + 4, lockY + 1, 0xFF2A2A2A);
             }
         }
     }
@@ -202,6 +239,11 @@ public class ClientInitializer implements ClientModInitializer {
             return;
         }
         
+        updateHotbarPlan();
+        if (!hotbarHasOverlay) {
+            return;
+        }
+        
         int screenWidth = client.getWindow().getGuiScaledWidth();
         int screenHeight = client.getWindow().getGuiScaledHeight();
         
@@ -211,19 +253,17 @@ public class ClientInitializer implements ClientModInitializer {
         
         // Render overlays for first 9 slots (hotbar = inventory slots 0-8)
         for (int i = 0; i < 9; i++) {
-            ClientSlotDataCache.CachedSlotData data = ClientSlotDataCache.getSlotData(i);
+            int state = hotbarStates[i];
             
-            if (data != null && data.state != com.reservedslots.common.SlotState.NORMAL) {
+            if (state != SlotState.NORMAL.ordinal()) {
                 int slotX = x + i * 20 + 3; // Each slot is 20 pixels wide, with 3 pixel padding
                 int slotY = y + 3; // 3 pixel padding from top
                 
                 // If slot is empty, draw ghost item
                 ItemStack currentStack = client.player.getInventory().getItem(i);
-                if (currentStack.isEmpty() && data.item != null) {
-                    ItemStack ghostStack = new ItemStack(data.item);
-                    
+                if (currentStack.isEmpty() && hotbarGhosts[i] != null) {
                     // Draw the item
-                    extractor.item(ghostStack, slotX, slotY);
+                    extractor.item(hotbarGhosts[i], slotX, slotY);
                     
                     // Draw single black overlay to fade the item (no background darkening)
                     extractor.fill(slotX, slotY, slotX + 16, slotY + 16, 0x99161616); // Single layer for ghost
@@ -235,7 +275,7 @@ public class ClientInitializer implements ClientModInitializer {
                 }
                 
                 // Draw lock icon for locked slots (must be above ghost overlay)
-                if (data.state == com.reservedslots.common.SlotState.LOCKED) {
+                if (state == SlotState.LOCKED.ordinal()) {
                     // Draw white square for lock with black center
                     extractor.fill(slotX + 11, slotY + 1, slotX + 15, slotY + 5, 0xFF2A2A2A);
                     extractor.fill(slotX + 12, slotY + 2, slotX + 14, slotY + 4, 0xFF9E9E9E);
@@ -243,4 +283,28 @@ public class ClientInitializer implements ClientModInitializer {
             }
         }
     }
+
+    /**
+     * Rebuilds the hotbar render plan if the slot cache has changed since it was built.
+     * Ghost stacks are kept while a slot's reserved item stays the same.
+     */
+    private static void updateHotbarPlan() {
+        int generation = ClientSlotDataCache.generation();
+        if (generation == hotbarPlanGeneration) {
+            return;
+        }
+        hotbarPlanGeneration = generation;
+        hotbarHasOverlay = false;
+        for (int i = 0; i < 9; i++) {
+            ClientSlotDataCache.CachedSlotData data = ClientSlotDataCache.getSlotData(i);
+            if (data == null) {
+                hotbarStates[i] = (byte) SlotState.NORMAL.ordinal();
+                hotbarGhosts[i] = null;
+                continue;
+            }
+            hotbarStates[i] = (byte) data.state.ordinal();
+            hotbarGhosts[i] = SlotOverlays.ghostStack(hotbarGhosts[i], data.item);
+            hotbarHasOverlay = true;
+        }
+    }
 }
@@ -0,0 +1,135 @@
+package com.reservedslots.client;
+
+import com.reservedslots.ReservedSlotsMod;
+import com.reservedslots.common.CompactLayoutCodec;
+import com.reservedslots.common.PlayerSlotLayout;
+import com.reservedslots.common.SlotState;
+import com.reservedslots.common.StoredLayout;
+import com.reservedslots.network.ClientSlotDataCache;
+import com.reservedslots.network.ReservedSlotPackets;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.multiplayer.ServerData;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.Identifier;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.level.storage.LevelResource;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Remembers the last layout seen on each server or singleplayer world, in
+ * {@code reservedslots/cache/} under the game directory.
+ *
+ * On join the cached layout is shown straight away and its fingerprint sent to the server
+ * (see LayoutHandshake), which only sends a full sync if it has changed. On disconnect
+ * the last state the server confirmed is written back; unacknowledged predictions are
+ * left out, since the server may never have applied them.
+ */
+public final class ClientLayoutCache {
+    // Cache file for the current connection; null if the server doesn't do the handshake
+    private static Path currentFile;
+
+    private ClientLayoutCache() {
+    }
+
+    public static void onJoin(Minecraft client) {
+        currentFile = null;
+        if (!ClientPlayNetworking.canSend(ReservedSlotPackets.HelloPayload.ID)) {
+            return; // Older server: it sends a full sync regardless
+        }
+        currentFile = cacheDir().resolve(URLEncoder.encode(serverId(client), StandardCharsets.UTF_8) + ".bin");
+
+        StoredLayout cached = read(currentFile);
+        ClientSlotDataCache.clear();
+        for (long mask = cached.reservedMask(); mask != 0; mask &= mask - 1) {
+            int i = Long.numberOfTrailingZeros(mask);
+            ClientSlotDataCache.setSlotData(i, SlotState.values()[cached.state(i)], item(cached.itemId(i)));
+        }
+        // Hash what was actually applied, so an item that no longer resolves forces a full sync
+        ClientPlayNetworking.send(new ReservedSlotPackets.HelloPayload(snapshot().fingerprint()));
+    }
+
+    public static void onDisconnect() {
+        Path file = currentFile;
+        currentFile = null;
+        if (file == null) {
+            return;
+        }
+        try {
+            write(file, snapshot());
+        } catch (IOException e) {
+            ReservedSlotsMod.LOGGER.warn("Failed to save cached reserved slot layout to {}", file, e);
+        }
+    }
+
+    /**
+     * The server-confirmed contents of the client cache as a StoredLayout, with the same
+     * item ids the server uses.
+     */
+    private static StoredLayout snapshot() {
+        byte[] states = new byte[PlayerSlotLayout.SIZE];
+        String[] itemIds = new String[PlayerSlotLayout.SIZE];
+        for (int i = 0; i < PlayerSlotLayout.SIZE; i++) {
+            ClientSlotDataCache.CachedSlotData data = ClientSlotDataCache.getServerSlotData(i);
+            if (data != null && data.state != SlotState.NORMAL) {
+                states[i] = (byte) data.state.ordinal();
+                itemIds[i] = data.item != null ? BuiltInRegistries.ITEM.getKey(data.item).toString() : null;
+            }
+        }
+        return StoredLayout.of(states, itemIds);
+    }
+
+    private static Item item(String itemId) {
+        if (itemId == null) {
+            return null;
+        }
+        Identifier id = Identifier.tryParse(itemId);
+        return id != null ? BuiltInRegistries.ITEM.getValue(id) : null;
+    }
+
+    private static String serverId(Minecraft client) {
+        MinecraftServer integrated = client.getSingleplayerServer();
+        if (integrated != null) {
+            return "local/" + integrated.getWorldPath(LevelResource.ROOT).toAbsolutePath().normalize().getFileName();
+        }
+        ServerData server = client.getCurrentServer();
+        return server != null ? server.ip : "unknown";
+    }
+
+    private static Path cacheDir() {
+        return FabricLoader.getInstance().getGameDir().resolve(ReservedSlotsMod.MOD_ID).resolve("cache");
+    }
+
+    private static StoredLayout read(Path file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            return CompactLayoutCodec.read(in);
+        } catch (NoSuchFileException e) {
+            return StoredLayout.EMPTY;
+        } catch (IOException | RuntimeException e) {
+            ReservedSlotsMod.LOGGER.warn("Ignoring unreadable cached reserved slot layout {}", file, e);
+            return StoredLayout.EMPTY;
+        }
+    }
+
+    private static void write(Path file, StoredLayout layout) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            CompactLayoutCodec.write(layout, out);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
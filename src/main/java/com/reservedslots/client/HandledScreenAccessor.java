@@ -9,4 +9,6 @@ public interface HandledScreenAccessor {
     Slot getHoveredSlot();
     int getX();
     int getY();
+    SlotOverlays getSlotOverlays();
+    void setSlotOverlays(SlotOverlays overlays);
 }
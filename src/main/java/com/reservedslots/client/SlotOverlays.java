@@ -0,0 +1,120 @@
+package com.reservedslots.client;
+
+import com.reservedslots.common.PlayerSlotLayout;
+import com.reservedslots.common.SlotState;
+import com.reservedslots.network.ClientSlotDataCache;
+import net.minecraft.world.entity.player.Inventory;
+import net.minecraft.world.inventory.AbstractContainerMenu;
+import net.minecraft.world.inventory.Slot;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Overlay draw list for one container screen: the menu's player inventory slots that are
+ * reserved or locked, with their state and ghost stack.
+ *
+ * Created when the screen is initialised and brought up to date once per frame, which
+ * only rebuilds it when ClientSlotDataCache, the menu's slot list or the player's
+ * inventory has changed. Both the screen's overlay pass and HandledScreenMixin's slot
+ * backgrounds draw from it.
+ */
+public final class SlotOverlays {
+    private final AbstractContainerMenu menu;
+
+    private int generation;
+    private int builtForSlotCount = -1;
+    private Inventory inventory;
+
+    private int count;
+    private Slot[] slots = new Slot[PlayerSlotLayout.SIZE];
+    private byte[] states = new byte[PlayerSlotLayout.SIZE];           // SlotState ordinals
+    private ItemStack[] ghosts = new ItemStack[PlayerSlotLayout.SIZE]; // null if no reserved item
+    private int[] entryByMenuIndex = new int[0];                       // -1 if the slot has no overlay
+
+    public SlotOverlays(AbstractContainerMenu menu) {
+        this.menu = menu;
+    }
+
+    /**
+     * Rebuilds the list if anything it depends on has changed.
+     */
+    public void update(Inventory playerInventory) {
+        List<Slot> menuSlots = menu.slots;
+        int generation = ClientSlotDataCache.generation();
+        if (generation == this.generation && menuSlots.size() == builtForSlotCount && playerInventory == inventory) {
+            return;
+        }
+        this.generation = generation;
+        builtForSlotCount = menuSlots.size();
+        inventory = playerInventory;
+
+        if (entryByMenuIndex.length != menuSlots.size()) {
+            entryByMenuIndex = new int[menuSlots.size()];
+        }
+        Arrays.fill(entryByMenuIndex, -1);
+        int previousCount = count;
+        count = 0;
+        for (int i = 0; i < menuSlots.size(); i++) {
+            Slot slot = menuSlots.get(i);
+            if (slot.container != playerInventory) {
+                continue;
+            }
+            ClientSlotDataCache.CachedSlotData data = ClientSlotDataCache.getSlotData(slot.getContainerSlot());
+            if (data == null) {
+                continue;
+            }
+            if (count == slots.length) {
+                slots = Arrays.copyOf(slots, count * 2);
+                states = Arrays.copyOf(states, count * 2);
+                ghosts = Arrays.copyOf(ghosts, count * 2);
+            }
+            slots[count] = slot;
+            states[count] = (byte) data.state.ordinal();
+            ghosts[count] = ghostStack(ghosts[count], data.item);
+            entryByMenuIndex[i] = count++;
+        }
+        Arrays.fill(slots, count, Math.max(count, previousCount), null);
+        Arrays.fill(ghosts, count, Math.max(count, previousCount), null);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public Slot slot(int entry) {
+        return slots[entry];
+    }
+
+    public boolean isLocked(int entry) {
+        return states[entry] == SlotState.LOCKED.ordinal();
+    }
+
+    public ItemStack ghost(int entry) {
+        return ghosts[entry];
+    }
+
+    /**
+     * Whether this menu slot is reserved or locked, as of the last update.
+     */
+    public boolean hasOverlay(Slot slot) {
+        int index = slot.index;
+        if (index < 0 || index >= entryByMenuIndex.length) {
+            return false;
+        }
+        int entry = entryByMenuIndex[index];
+        return entry >= 0 && slots[entry] == slot;
+    }
+
+    /**
+     * A stack to draw as the ghost of a reserved item, reusing previous if it already is one.
+     */
+    static ItemStack ghostStack(ItemStack previous, Item item) {
+        if (item == null) {
+            return null;
+        }
+        return previous != null && previous.is(item) ? previous : new ItemStack(item);
+    }
+}
@@ -0,0 +1,157 @@
+package com.reservedslots.common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Versioned binary encoding of a StoredLayout.
+ *
+ * <pre>
+ * magic     "RSL"           3 bytes
+ * version   1               1 byte
+ * mask      non-NORMAL slots 6 bytes, bit i = slot i
+ * states    2 bits per set mask bit, packed low bits first
+ * palette   varint count, then that many item identifiers (modified UTF-8)
+ * items     per set mask bit: varint palette index + 1 (0 = no item)
+ * </pre>
+ *
+ * A typical layout with a handful of reservations is a few dozen bytes, and decoding
+ * reads straight into the layout arrays without building an NBT tree.
+ */
+public final class CompactLayoutCodec {
+    public static final int VERSION = 1;
+    private static final byte[] MAGIC = {'R', 'S', 'L'};
+
+    private CompactLayoutCodec() {
+    }
+
+    /**
+     * Checks whether data starts with this format's magic, as opposed to legacy gzip NBT.
+     */
+    public static boolean isCompact(byte[] data) {
+        return data.length >= MAGIC.length + 1
+                && data[0] == MAGIC[0] && data[1] == MAGIC[1] && data[2] == MAGIC[2];
+    }
+
+    public static void write(StoredLayout layout, DataOutput out) throws IOException {
+        long mask = layout.reservedMask();
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        out.writeShort((int) (mask >>> 32));
+        out.writeInt((int) mask);
+
+        // Packed 2-bit states, four per byte
+        int bits = 0;
+        int used = 0;
+        for (long m = mask; m != 0; m &= m - 1) {
+            int i = Long.numberOfTrailingZeros(m);
+            bits |= (layout.state(i) & 0b11) << used;
+            used += 2;
+            if (used == 8) {
+                out.writeByte(bits);
+                bits = 0;
+                used = 0;
+            }
+        }
+        if (used > 0) {
+            out.writeByte(bits);
+        }
+
+        // Palette of distinct item ids, in first-use order
+        Map<String, Integer> paletteIndex = new HashMap<>();
+        List<String> palette = new ArrayList<>();
+        for (long m = mask; m != 0; m &= m - 1) {
+            String id = layout.itemId(Long.numberOfTrailingZeros(m));
+            if (id != null && paletteIndex.putIfAbsent(id, palette.size()) == null) {
+                palette.add(id);
+            }
+        }
+        writeVarInt(out, palette.size());
+        for (String id : palette) {
+            out.writeUTF(id);
+        }
+
+        for (long m = mask; m != 0; m &= m - 1) {
+            String id = layout.itemId(Long.numberOfTrailingZeros(m));
+            writeVarInt(out, id == null ? 0 : paletteIndex.get(id) + 1);
+        }
+    }
+
+    public static StoredLayout read(DataInput in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (magic[0] != MAGIC[0] || magic[1] != MAGIC[1] || magic[2] != MAGIC[2]) {
+            throw new IOException("Not a compact reserved slot layout");
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported compact layout version " + version);
+        }
+
+        long mask = ((long) in.readUnsignedShort() << 32) | (in.readInt() & 0xFFFFFFFFL);
+        if ((mask >>> StoredLayout.SIZE) != 0) {
+            throw new IOException("Slot mask has bits beyond slot " + (StoredLayout.SIZE - 1));
+        }
+
+        byte[] states = new byte[StoredLayout.SIZE];
+        int bits = 0;
+        int available = 0;
+        for (long m = mask; m != 0; m &= m - 1) {
+            if (available == 0) {
+                bits = in.readUnsignedByte();
+                available = 8;
+            }
+            int state = bits & 0b11;
+            if (state == 0 || state >= SlotState.values().length) {
+                throw new IOException("Invalid slot state " + state);
+            }
+            states[Long.numberOfTrailingZeros(m)] = (byte) state;
+            bits >>>= 2;
+            available -= 2;
+        }
+
+        int paletteSize = readVarInt(in);
+        if (paletteSize > StoredLayout.SIZE) {
+            throw new IOException("Palette too large: " + paletteSize);
+        }
+        String[] palette = new String[paletteSize];
+        for (int p = 0; p < paletteSize; p++) {
+            palette[p] = in.readUTF();
+        }
+
+        String[] itemIds = new String[StoredLayout.SIZE];
+        for (long m = mask; m != 0; m &= m - 1) {
+            int ref = readVarInt(in);
+            if (ref > paletteSize) {
+                throw new IOException("Palette index out of range: " + ref);
+            }
+            itemIds[Long.numberOfTrailingZeros(m)] = ref == 0 ? null : palette[ref - 1];
+        }
+        return StoredLayout.of(states, itemIds);
+    }
+
+    static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("VarInt too long");
+    }
+}
@@ -0,0 +1,133 @@
+package com.reservedslots.common;
+
+import net.minecraft.world.Container;
+import net.minecraft.world.item.ItemStack;
+
+/**
+ * Tracks which player inventory slots are empty, partially filled or full as bitmasks.
+ *
+ * Updated incrementally from the Inventory.setItem/removeItem hooks. Each stack placed in
+ * a slot is also told which slot it is in, so a stack that grows or shrinks in place
+ * reports itself through ItemStackMixin and the masks stay exact without rescanning.
+ * Inventory.setChanged still marks them dirty for the few paths that write the item
+ * list directly (loading, respawn), and the next query rescans once.
+ */
+public final class InventoryOccupancy {
+    public static final int MAIN_SIZE = 36;
+    public static final long MAIN_MASK = (1L << MAIN_SIZE) - 1; // slots 0-35, excluding armor and offhand
+
+    private long emptyMask;
+    private long partialMask;
+    private long fullMask;
+    private final ItemStack[] tracked = new ItemStack[PlayerSlotLayout.SIZE]; // stack each slot was last seen holding
+    private boolean dirty = true;
+    private int version; // bumped whenever a mask actually changes
+
+    /**
+     * Records the new contents of a single slot.
+     */
+    public void update(int slotIndex, ItemStack stack) {
+        if (!PlayerSlotLayout.isValidSlot(slotIndex)) {
+            return;
+        }
+        track(slotIndex, stack);
+        classify(slotIndex, stack);
+    }
+
+    /**
+     * Called by ItemStackMixin when a stack changes count in place. Ignored if the stack
+     * has since left the slot, or if a rescan is pending anyway.
+     */
+    public void stackChanged(int slotIndex, ItemStack stack) {
+        if (!dirty && tracked[slotIndex] == stack) {
+            classify(slotIndex, stack);
+        }
+    }
+
+    private void track(int slotIndex, ItemStack stack) {
+        tracked[slotIndex] = stack;
+        if (stack != ItemStack.EMPTY) {
+            ((TrackedItemStack) (Object) stack).setReservedSlotsOwner(this, slotIndex);
+        }
+    }
+
+    private void classify(int slotIndex, ItemStack stack) {
+        long bit = 1L << slotIndex;
+        long empty = emptyMask & ~bit;
+        long partial = partialMask & ~bit;
+        long full = fullMask & ~bit;
+        if (stack.isEmpty()) {
+            empty |= bit;
+        } else if (stack.getCount() < stack.getMaxStackSize()) {
+            partial |= bit;
+        } else {
+            full |= bit;
+        }
+        setMasks(empty, partial, full);
+    }
+
+    private void setMasks(long empty, long partial, long full) {
+        if (empty != emptyMask || partial != partialMask || full != fullMask) {
+            emptyMask = empty;
+            partialMask = partial;
+            fullMask = full;
+            version++;
+        }
+    }
+
+    /**
+     * Forces a full rescan on the next query.
+     */
+    public void markDirty() {
+        dirty = true;
+    }
+
+    /**
+     * Rescans the inventory if the masks may be stale.
+     */
+    public InventoryOccupancy refresh(Container inventory) {
+        if (dirty) {
+            long empty = 0;
+            long partial = 0;
+            long full = 0;
+            for (int i = 0; i < PlayerSlotLayout.SIZE; i++) {
+                ItemStack stack = inventory.getItem(i);
+                track(i, stack);
+                long bit = 1L << i;
+                if (stack.isEmpty()) {
+                    empty |= bit;
+                } else if (stack.getCount() < stack.getMaxStackSize()) {
+                    partial |= bit;
+                } else {
+                    full |= bit;
+                }
+            }
+            setMasks(empty, partial, full);
+            dirty = false;
+        }
+        return this;
+    }
+
+    /**
+     * Changes only when the masks change, so a rescan that finds nothing new keeps
+     * results derived from them valid.
+     */
+    public int version() {
+        return version;
+    }
+
+    public long emptyMask() {
+        return emptyMask;
+    }
+
+    /**
+     * Slots holding a stack that can still grow.
+     */
+    public long partialMask() {
+        return partialMask;
+    }
+
+    public long fullMask() {
+        return fullMask;
+    }
+}
@@ -0,0 +1,17 @@
+package com.reservedslots.common;
+
+/**
+ * Implemented on the player Inventory by PlayerInventoryMixin to expose its occupancy masks
+ * and whether its owner has any reserved or locked slots.
+ */
+public interface InventoryOccupancyAccessor {
+    InventoryOccupancy getReservedSlotsOccupancy();
+
+    /**
+     * False when the owner has no reservations, in which case the mixins leave every
+     * inventory operation to vanilla.
+     */
+    boolean hasActiveReservations();
+
+    void setActiveReservations(boolean active);
+}
@@ -0,0 +1,145 @@
+package com.reservedslots.common;
+
+import it.unimi.dsi.fastutil.objects.Reference2LongOpenHashMap;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+
+/**
+ * Compact per-player table of slot states and reserved items.
+ * Slots are indexed like the player inventory (0-35 main, 36-40 armor and offhand).
+ */
+public final class PlayerSlotLayout {
+    public static final int SIZE = StoredLayout.SIZE;
+
+    private static final SlotState[] STATES = SlotState.values();
+
+    private final byte[] states = new byte[SIZE];  // SlotState ordinals
+    private final Item[] items = new Item[SIZE];   // null if not reserved
+    private long reservedMask;                     // bit i set when slot i is not NORMAL
+    private long lockedMask;                       // bit i set when slot i is LOCKED
+    private int version;                           // bumped on every change
+
+    // Reservation index: item -> bitmask of slots reserved/locked for it
+    private final Reference2LongOpenHashMap<Item> reservedByItem = new Reference2LongOpenHashMap<>();
+    private final Reference2LongOpenHashMap<Item> lockedByItem = new Reference2LongOpenHashMap<>();
+
+    public static boolean isValidSlot(int slotIndex) {
+        return slotIndex >= 0 && slotIndex < SIZE;
+    }
+
+    public SlotState getState(int slotIndex) {
+        return STATES[states[slotIndex]];
+    }
+
+    public Item getItem(int slotIndex) {
+        return items[slotIndex];
+    }
+
+    public boolean isNormal(int slotIndex) {
+        return (reservedMask & (1L << slotIndex)) == 0;
+    }
+
+    /**
+     * Checks if the given stack matches the reservation of a slot.
+     */
+    public boolean matches(int slotIndex, ItemStack stack) {
+        Item item = items[slotIndex];
+        return item != null && !stack.isEmpty() && stack.getItem() == item;
+    }
+
+    public void set(int slotIndex, SlotState state, Item item) {
+        long bit = 1L << slotIndex;
+        version++;
+        unindex(slotIndex, bit);
+        if (state == SlotState.NORMAL) {
+            states[slotIndex] = 0;
+            items[slotIndex] = null;
+            reservedMask &= ~bit;
+            lockedMask &= ~bit;
+        } else {
+            states[slotIndex] = (byte) state.ordinal();
+            items[slotIndex] = item;
+            reservedMask |= bit;
+            if (state == SlotState.LOCKED) {
+                lockedMask |= bit;
+            } else {
+                lockedMask &= ~bit;
+            }
+            if (item != null) {
+                Reference2LongOpenHashMap<Item> index = state == SlotState.LOCKED ? lockedByItem : reservedByItem;
+                index.put(item, index.getLong(item) | bit);
+            }
+        }
+    }
+
+    private void unindex(int slotIndex, long bit) {
+        Item previous = items[slotIndex];
+        if (previous == null) {
+            return;
+        }
+        Reference2LongOpenHashMap<Item> index = (lockedMask & bit) != 0 ? lockedByItem : reservedByItem;
+        long remaining = index.getLong(previous) & ~bit;
+        if (remaining == 0) {
+            index.removeLong(previous);
+        } else {
+            index.put(previous, remaining);
+        }
+    }
+
+    /**
+     * Returns true if at least one slot is reserved or locked.
+     */
+    public boolean hasAnyReservation() {
+        return reservedMask != 0;
+    }
+
+    /**
+     * Bitmask of all slots that are RESERVED or LOCKED.
+     */
+    public long reservedMask() {
+        return reservedMask;
+    }
+
+    /**
+     * Bitmask of all slots that are LOCKED.
+     */
+    public long lockedMask() {
+        return lockedMask;
+    }
+
+    /**
+     * Bitmask of RESERVED (not locked) slots whose reservation is the given item.
+     */
+    public long reservedMaskFor(Item item) {
+        return reservedByItem.getLong(item);
+    }
+
+    /**
+     * Bitmask of LOCKED slots whose reservation is the given item.
+     */
+    public long lockedMaskFor(Item item) {
+        return lockedByItem.getLong(item);
+    }
+
+    /**
+     * Changes whenever any slot is set, for caches derived from this layout.
+     */
+    public int version() {
+        return version;
+    }
+
+    public int reservedCount() {
+        return Long.bitCount(reservedMask);
+    }
+
+    /**
+     * Builds a standalone ReservedSlotData for a slot (for the map-based API).
+     * NORMAL slots return the shared read-only {@link ReservedSlotData#NORMAL}.
+     */
+    public ReservedSlotData toSlotData(int slotIndex) {
+        if (isNormal(slotIndex)) {
+            return ReservedSlotData.NORMAL;
+        }
+        return new ReservedSlotData(getState(slotIndex), items[slotIndex]);
+    }
+}
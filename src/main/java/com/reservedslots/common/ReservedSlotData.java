@@ -2,24 +2,38 @@ package com.reservedslots.common;
 
 import net.minecraft.world.item.Item;
 import net.minecraft.world.item.ItemStack;
-import net.minecraft.nbt.CompoundTag;
-import net.minecraft.core.registries.BuiltInRegistries;
-import net.minecraft.resources.Identifier;
 
 /**
  * Holds the state and reserved item for a single inventory slot.
  */
 public class ReservedSlotData {
+    /**
+     * Shared read-only value for slots without a reservation. Use copy() to get a mutable one.
+     */
+    public static final ReservedSlotData NORMAL = new ReservedSlotData(SlotState.NORMAL, null, true);
+
     private SlotState state;
     private Item reservedItem; // null if not reserved
+    private final boolean immutable;
 
     public ReservedSlotData() {
         this(SlotState.NORMAL, null);
     }
 
     public ReservedSlotData(SlotState state, Item reservedItem) {
+        this(state, reservedItem, false);
+    }
+
+    private ReservedSlotData(SlotState state, Item reservedItem, boolean immutable) {
         this.state = state;
         this.reservedItem = reservedItem;
+        this.immutable = immutable;
+    }
+
+    private void checkMutable() {
+        if (immutable) {
+            throw new UnsupportedOperationException("Shared NORMAL slot data is read-only; copy() it first");
+        }
     }
 
     public SlotState getState() {
@@ -27,6 +41,7 @@ public class ReservedSlotData {
     }
 
     public void setState(SlotState state) {
+        checkMutable();
         this.state = state;
     }
 
@@ -35,6 +50,7 @@ public class ReservedSlotData {
     }
 
     public void setReservedItem(Item item) {
+        checkMutable();
         this.reservedItem = item;
     }
 
@@ -52,6 +68,7 @@ public class ReservedSlotData {
      * Cycles to the next state: NORMAL -> RESERVED -> LOCKED -> NORMAL
      */
     public void cycleState(Item currentItem) {
+        checkMutable();
         switch (state) {
             case NORMAL:
                 state = SlotState.RESERVED;
@@ -68,37 +85,6 @@ public class ReservedSlotData {
         }
     }
 
-    /**
-     * Serializes this slot data to NBT.
-     */
-    public CompoundTag toNbt() {
-        CompoundTag nbt = new CompoundTag();
-        nbt.putString("state", state.name());
-        if (reservedItem != null) {
-            Identifier id = BuiltInRegistries.ITEM.getKey(reservedItem);
-            nbt.putString("item", id.toString());
-        }
-        return nbt;
-    }
-
-    /**
-     * Deserializes slot data from NBT.
-     */
-    public static ReservedSlotData fromNbt(CompoundTag nbt) {
-        SlotState state = SlotState.valueOf(nbt.getString("state").orElse("UNLOCKED"));
-        Item item = null;
-        if (nbt.contains("item")) {
-            String itemString = nbt.getString("item").orElse(null);
-            if (itemString != null) {
-                Identifier id = Identifier.tryParse(itemString);
-                if (id != null) {
-                    item = BuiltInRegistries.ITEM.getValue(id);
-                }
-            }
-        }
-        return new ReservedSlotData(state, item);
-    }
-
     public ReservedSlotData copy() {
         return new ReservedSlotData(this.state, this.reservedItem);
     }
@@ -0,0 +1,127 @@
+package com.reservedslots.common;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Immutable snapshot of one player's slot layout as it is persisted: a state ordinal and
+ * an item identifier string per slot. Free of game classes so storage code and the
+ * offline tools can use it without a running game.
+ */
+public final class StoredLayout {
+    public static final int SIZE = 41; // 36 inventory + 4 armor + 1 offhand
+
+    public static final StoredLayout EMPTY = new StoredLayout(new byte[SIZE], new String[SIZE]);
+
+    private final byte[] states;     // SlotState ordinals
+    private final String[] itemIds;  // null if the slot has no reserved item
+
+    private StoredLayout(byte[] states, String[] itemIds) {
+        this.states = states;
+        this.itemIds = itemIds;
+    }
+
+    /**
+     * Creates a layout from per-slot arrays of length SIZE. The arrays are copied.
+     */
+    public static StoredLayout of(byte[] states, String[] itemIds) {
+        if (states.length != SIZE || itemIds.length != SIZE) {
+            throw new IllegalArgumentException("Layout arrays must have " + SIZE + " slots");
+        }
+        byte[] stateCopy = states.clone();
+        String[] itemCopy = itemIds.clone();
+        for (int i = 0; i < SIZE; i++) {
+            if (stateCopy[i] == 0) {
+                itemCopy[i] = null; // NORMAL slots never carry an item
+            }
+        }
+        return new StoredLayout(stateCopy, itemCopy);
+    }
+
+    /**
+     * Returns a copy of this layout with one slot replaced.
+     */
+    public StoredLayout withSlot(int slotIndex, int state, String itemId) {
+        byte[] stateCopy = states.clone();
+        String[] itemCopy = itemIds.clone();
+        stateCopy[slotIndex] = (byte) state;
+        itemCopy[slotIndex] = state == 0 ? null : itemId;
+        return new StoredLayout(stateCopy, itemCopy);
+    }
+
+    public int state(int slotIndex) {
+        return states[slotIndex];
+    }
+
+    public String itemId(int slotIndex) {
+        return itemIds[slotIndex];
+    }
+
+    /**
+     * Bitmask of slots that are not NORMAL.
+     */
+    public long reservedMask() {
+        long mask = 0;
+        for (int i = 0; i < SIZE; i++) {
+            if (states[i] != 0) {
+                mask |= 1L << i;
+            }
+        }
+        return mask;
+    }
+
+    public boolean isEmpty() {
+        return reservedMask() == 0;
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the layout's content (slot, state and item id of every
+     * non-NORMAL slot). Client and server compute it independently to tell whether a
+     * cached layout is still current.
+     */
+    public long fingerprint() {
+        long hash = 0xcbf29ce484222325L;
+        for (long mask = reservedMask(); mask != 0; mask &= mask - 1) {
+            int i = Long.numberOfTrailingZeros(mask);
+            hash = fnv(hash, i);
+            hash = fnv(hash, states[i]);
+            if (itemIds[i] != null) {
+                for (byte b : itemIds[i].getBytes(StandardCharsets.UTF_8)) {
+                    hash = fnv(hash, b);
+                }
+            }
+            hash = fnv(hash, 0xFF); // Separator; never appears in UTF-8
+        }
+        return hash;
+    }
+
+    private static long fnv(long hash, int b) {
+        return (hash ^ (b & 0xFF)) * 0x100000001b3L;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof StoredLayout other
+                && Arrays.equals(states, other.states)
+                && Arrays.equals(itemIds, other.itemIds);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(states) + Arrays.hashCode(itemIds);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("StoredLayout[");
+        for (long mask = reservedMask(); mask != 0; mask &= mask - 1) {
+            int i = Long.numberOfTrailingZeros(mask);
+            sb.append(i).append('=').append(states[i]).append(':').append(Objects.toString(itemIds[i], "-"));
+            if ((mask & (mask - 1)) != 0) {
+                sb.append(", ");
+            }
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,12 @@
+package com.reservedslots.common;
+
+/**
+ * Implemented on ItemStack by ItemStackMixin so a stack placed in a player inventory slot
+ * can report in-place count changes back to that inventory's occupancy masks.
+ */
+public interface TrackedItemStack {
+    /**
+     * Records the occupancy masks (and slot) this stack was last placed in.
+     */
+    void setReservedSlotsOwner(InventoryOccupancy owner, int slotIndex);
+}
@@ -1,12 +1,14 @@
 package com.reservedslots.mixin;
 
+import com.reservedslots.common.InventoryOccupancyAccessor;
+import com.reservedslots.common.PlayerSlotLayout;
 import com.reservedslots.server.ReservedSlotManager;
 import net.minecraft.world.entity.player.Inventory;
-import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.inventory.AbstractContainerMenu;
 import net.minecraft.world.inventory.Slot;
 import net.minecraft.world.item.ItemStack;
 import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
@@ -20,11 +22,31 @@ import java.util.List;
 @Mixin(AbstractContainerMenu.class)
 public abstract class ContainerMenuMixin {
 
+    // Player inventory index -> menu Slot within the last shift-click range, built lazily
+    @Unique
+    private Slot[] reservedslots$inventorySlots;
+
+    // Inventory indices that have a Slot in that range
+    @Unique
+    private long reservedslots$allowed;
+
+    @Unique
+    private Inventory reservedslots$inventory;
+
+    @Unique
+    private int reservedslots$builtForSlotCount = -1;
+
+    @Unique
+    private int reservedslots$builtForStart;
+
+    @Unique
+    private int reservedslots$builtForEnd;
+
     /**
      * Intercepts moveItemStackTo when the destination range contains player inventory
      * slots. Instead of vanilla's sequential slot iteration, we route the item through
-     * ReservedSlotManager.findBestSlotForItem so the same priority logic applies as
-     * when picking items up from the ground.
+     * ReservedSlotManager.insertIntoMenuSlots so the same priority logic applies as
+     * when picking items up from the ground, and the whole stack is placed in one pass.
      *
      * We only take over when ALL destination slots belong to a player inventory (i.e.
      * the player is shift-clicking something OUT of a container INTO their inventory).
@@ -54,49 +76,55 @@ public abstract class ContainerMenuMixin {
             }
         }
 
-        if (playerInventory == null) return;
-
-        Player player = playerInventory.player;
-        boolean changed = false;
+        // Players without reservations keep vanilla shift-click behaviour.
+        if (playerInventory == null
+                || !((InventoryOccupancyAccessor) playerInventory).hasActiveReservations()) return;
 
-        while (!stack.isEmpty()) {
-            int targetInvSlot = ReservedSlotManager.findBestSlotForItem(player, stack);
-            if (targetInvSlot < 0) break;
+        // Placement is restricted to inventory slots that have a Slot inside the range.
+        Slot[] menuSlots = reservedslots$getInventorySlots(slots, playerInventory, startIndex, endIndex);
 
-            // Find the matching container slot so we can use slot.set() for proper sync.
-            // Use getContainerSlot() (backing inventory index), NOT slot.index (container position).
-            Slot targetSlot = null;
-            for (int i = startIndex; i < endIndex && i < slots.size(); i++) {
-                Slot s = slots.get(i);
-                if (s.container == playerInventory && s.getContainerSlot() == targetInvSlot) {
-                    targetSlot = s;
-                    break;
-                }
-            }
+        int placed = ReservedSlotManager.insertIntoMenuSlots(playerInventory.player, stack, menuSlots,
+                reservedslots$allowed);
+        cir.setReturnValue(placed > 0);
+    }
 
-            if (targetSlot == null) {
-                // Best slot is outside the allowed range — stop here.
-                break;
-            }
+    /**
+     * Returns the player-inventory-index -> Slot table for the menu range [start, end),
+     * and sets reservedslots$allowed to the inventory indices it covers. Only slots inside
+     * the range are used, so an inventory slot the menu exposes twice (a hotbar mirror)
+     * maps to its copy in the range. A menu shift-clicks into the same one or two ranges
+     * over and over, so the table for the last range is kept; menus only add slots while
+     * being constructed, so it is also rebuilt if the slot count changed.
+     */
+    @Unique
+    private Slot[] reservedslots$getInventorySlots(List<Slot> slots, Inventory playerInventory,
+                                                   int start, int end) {
+        if (reservedslots$inventorySlots != null
+                && reservedslots$inventory == playerInventory
+                && reservedslots$builtForSlotCount == slots.size()
+                && reservedslots$builtForStart == start
+                && reservedslots$builtForEnd == end) {
+            return reservedslots$inventorySlots;
+        }
 
-            ItemStack current = targetSlot.getItem();
-            if (current.isEmpty()) {
-                int take = Math.min(stack.getCount(), targetSlot.getMaxStackSize());
-                targetSlot.set(stack.split(take));
-                changed = true;
-            } else if (ItemStack.isSameItemSameComponents(current, stack)
-                    && current.getCount() < current.getMaxStackSize()) {
-                int toAdd = Math.min(stack.getCount(), current.getMaxStackSize() - current.getCount());
-                current.grow(toAdd);
-                stack.shrink(toAdd);
-                targetSlot.setChanged();
-                changed = true;
-            } else {
-                // findBestSlotForItem returned a slot we can't actually use — stop.
-                break;
+        Slot[] table = new Slot[PlayerSlotLayout.SIZE];
+        long allowed = 0;
+        for (int i = start; i < end && i < slots.size(); i++) {
+            Slot slot = slots.get(i);
+            int invSlot = slot.getContainerSlot();
+            // Use getContainerSlot() (backing inventory index), NOT slot.index (container position).
+            if (slot.container == playerInventory && PlayerSlotLayout.isValidSlot(invSlot) && table[invSlot] == null) {
+                table[invSlot] = slot;
+                allowed |= 1L << invSlot;
             }
         }
 
-        cir.setReturnValue(changed);
+        reservedslots$inventorySlots = table;
+        reservedslots$allowed = allowed;
+        reservedslots$inventory = playerInventory;
+        reservedslots$builtForSlotCount = slots.size();
+        reservedslots$builtForStart = start;
+        reservedslots$builtForEnd = end;
+        return table;
     }
 }
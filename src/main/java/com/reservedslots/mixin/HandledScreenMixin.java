@@ -1,13 +1,13 @@
 package com.reservedslots.mixin;
 
 import com.reservedslots.client.HandledScreenAccessor;
-import com.reservedslots.network.ClientSlotDataCache;
-import net.minecraft.client.Minecraft;
+import com.reservedslots.client.SlotOverlays;
 import net.minecraft.client.gui.GuiGraphicsExtractor;
 import net.minecraft.client.gui.screens.inventory.AbstractContainerScreen;
 import net.minecraft.world.inventory.Slot;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
@@ -27,6 +27,10 @@ public abstract class HandledScreenMixin implements HandledScreenAccessor {
     @Shadow
     protected int topPos;
     
+    // Built by ClientInitializer at AFTER_INIT; null for screens it hasn't set up
+    @Unique
+    private SlotOverlays reservedslots$overlays;
+    
     @Override
     public Slot getHoveredSlot() {
         return hoveredSlot;
@@ -42,17 +46,23 @@ public abstract class HandledScreenMixin implements HandledScreenAccessor {
         return topPos;
     }
     
+    @Override
+    public SlotOverlays getSlotOverlays() {
+        return reservedslots$overlays;
+    }
+    
+    @Override
+    public void setSlotOverlays(SlotOverlays overlays) {
+        reservedslots$overlays = overlays;
+    }
+    
     /**
      * Draw dark background for reserved/locked slots BEFORE items are rendered.
      */
     @Inject(method = "extractSlot", at = @At("HEAD"))
     private void onDrawSlotStart(GuiGraphicsExtractor context, Slot slot, int mouseX, int mouseY, CallbackInfo ci) {
-        Minecraft client = Minecraft.getInstance();
-        if (client.player == null || slot.container != client.player.getInventory()) {
-            return;
-        }
-        ClientSlotDataCache.CachedSlotData data = ClientSlotDataCache.getSlotData(slot.getContainerSlot());
-        if (data != null && data.state != com.reservedslots.common.SlotState.NORMAL) {
+        // Overlays were brought up to date before this frame's slots are drawn
+        if (reservedslots$overlays != null && reservedslots$overlays.hasOverlay(slot)) {
             // Only draw background if there's an actual item (not for ghost items)
             if (!slot.getItem().isEmpty()) {
                 // Use slot's position, not mouse coordinates
@@ -0,0 +1,40 @@
+package com.reservedslots.mixin;
+
+import com.reservedslots.common.InventoryOccupancy;
+import com.reservedslots.common.TrackedItemStack;
+import net.minecraft.world.item.ItemStack;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+/**
+ * Mixin to report stacks that grow or shrink in place (placing the last block, eating,
+ * topping up a stack) to the occupancy masks of the player inventory holding them.
+ */
+@Mixin(ItemStack.class)
+public abstract class ItemStackMixin implements TrackedItemStack {
+    // Occupancy masks of the inventory slot this stack was last placed in, if any
+    @Unique
+    private InventoryOccupancy reservedslots$owner;
+
+    @Unique
+    private int reservedslots$ownerSlot;
+
+    @Override
+    public void setReservedSlotsOwner(InventoryOccupancy owner, int slotIndex) {
+        reservedslots$owner = owner;
+        reservedslots$ownerSlot = slotIndex;
+    }
+
+    /**
+     * grow, shrink, split and consume all end up here.
+     */
+    @Inject(method = "setCount", at = @At("TAIL"))
+    private void onSetCount(int count, CallbackInfo ci) {
+        if (reservedslots$owner != null) {
+            reservedslots$owner.stackChanged(reservedslots$ownerSlot, (ItemStack) (Object) this);
+        }
+    }
+}
@@ -1,34 +1,94 @@
 package com.reservedslots.mixin;
 
+import com.reservedslots.common.InventoryOccupancy;
+import com.reservedslots.common.InventoryOccupancyAccessor;
 import com.reservedslots.server.ReservedSlotManager;
 import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.entity.player.Inventory;
 import net.minecraft.world.item.ItemStack;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 
 /**
  * Mixin to intercept item insertion into player inventory to enforce reserved slot behavior.
  */
 @Mixin(Inventory.class)
-public abstract class PlayerInventoryMixin {
+public abstract class PlayerInventoryMixin implements InventoryOccupancyAccessor {
     @Shadow
     public Player player;
 
+    @Unique
+    private final InventoryOccupancy reservedslots$occupancy = new InventoryOccupancy();
+
+    // Set by ReservedSlotManager; while false every hook falls straight through to vanilla
+    @Unique
+    private boolean reservedslots$active;
+
     @Shadow
     public abstract ItemStack getItem(int slot);
 
     @Shadow
     public abstract void setItem(int slot, ItemStack stack);
 
+    @Override
+    public InventoryOccupancy getReservedSlotsOccupancy() {
+        return reservedslots$occupancy;
+    }
+
+    @Override
+    public boolean hasActiveReservations() {
+        return reservedslots$active;
+    }
+
+    @Override
+    public void setActiveReservations(boolean active) {
+        if (active && !reservedslots$active) {
+            // Masks weren't maintained while inactive
+            reservedslots$occupancy.markDirty();
+        }
+        reservedslots$active = active;
+    }
+
+    /**
+     * Keeps the occupancy masks current when a slot is replaced.
+     */
+    @Inject(method = "setItem", at = @At("TAIL"))
+    private void onSetItem(int slot, ItemStack stack, CallbackInfo ci) {
+        if (!reservedslots$active) return;
+        reservedslots$occupancy.update(slot, stack);
+    }
+
+    @Inject(method = "removeItem(II)Lnet/minecraft/world/item/ItemStack;", at = @At("RETURN"))
+    private void onRemoveItem(int slot, int amount, CallbackInfoReturnable<ItemStack> cir) {
+        if (!reservedslots$active) return;
+        reservedslots$occupancy.update(slot, getItem(slot));
+    }
+
+    @Inject(method = "removeItemNoUpdate", at = @At("RETURN"))
+    private void onRemoveItemNoUpdate(int slot, CallbackInfoReturnable<ItemStack> cir) {
+        if (!reservedslots$active) return;
+        reservedslots$occupancy.update(slot, getItem(slot));
+    }
+
+    /**
+     * In-place count changes are reported by the stacks themselves (ItemStackMixin); this
+     * catches the few paths that write the item list directly, with a lazy rescan.
+     */
+    @Inject(method = "setChanged", at = @At("HEAD"))
+    private void onSetChanged(CallbackInfo ci) {
+        reservedslots$occupancy.markDirty();
+    }
+
     /**
      * Intercepts insertStack(ItemStack) - the main method called when picking up items.
      * This is the single-parameter version that automatically finds a slot.
      * 
-     * Uses findBestSlotForItem which handles all priority logic:
+     * Uses insertAll, which follows the findBestSlotForItem priority logic:
      * - Locked slots get items first (if matching)
      * - Reserved slots get items second (if matching)
      * - Normal slots get items third
@@ -36,35 +96,16 @@ public abstract class PlayerInventoryMixin {
      */
     @Inject(method = "add(Lnet/minecraft/world/item/ItemStack;)Z", at = @At("HEAD"), cancellable = true)
     private void onInsertStackAuto(ItemStack stack, CallbackInfoReturnable<Boolean> cir) {
-        if (stack.isEmpty() || player.isSpectator()) {
+        if (!reservedslots$active || stack.isEmpty() || player.isSpectator()) {
             return;
         }
 
-        // Find the best slot using our custom logic
-        int targetSlot = ReservedSlotManager.findBestSlotForItem(player, stack);
+        // Spread the stack over every eligible slot in one go; anything left over
+        // stays in the stack for vanilla to retry later
+        int placed = ReservedSlotManager.insertAll(player, stack);
         
-        if (targetSlot >= 0) {
-            ItemStack currentStack = getItem(targetSlot);
-            
-            if (currentStack.isEmpty()) {
-                // Empty slot - insert the item
-                setItem(targetSlot, stack.copy());
-                stack.setCount(0);
-                cir.setReturnValue(true);
-                return;
-            } else if (ItemStack.isSameItemSameComponents(currentStack, stack) && 
-                       currentStack.getCount() < currentStack.getMaxStackSize()) {
-                // Can stack with existing item
-                int toAdd = Math.min(stack.getCount(), currentStack.getMaxStackSize() - currentStack.getCount());
-                currentStack.grow(toAdd);
-                stack.shrink(toAdd);
-                cir.setReturnValue(true); // Items were successfully added; triggers pickup sound/animation
-                return;
-            }
-        }
-        
-        // No slot available - inventory is full
-        cir.setReturnValue(false);
+        // true triggers pickup sound/animation; false means the inventory is full
+        cir.setReturnValue(placed > 0);
     }
 
     /**
@@ -72,22 +113,12 @@ public abstract class PlayerInventoryMixin {
      */
     @Inject(method = "getSlotWithRemainingSpace", at = @At("HEAD"), cancellable = true)
     private void onGetOccupiedSlot(ItemStack stack, CallbackInfoReturnable<Integer> cir) {
+        if (!reservedslots$active) return;
+        
         // This helps prevent locked slots from being used for stacking
-        for (int i = 0; i < 36; i++) {
-            ItemStack currentStack = getItem(i);
-            
-            if (!currentStack.isEmpty() && 
-                ItemStack.isSameItemSameComponents(currentStack, stack) && 
-                currentStack.getCount() < currentStack.getMaxStackSize()) {
-                
-                // Check if this slot can accept the item
-                if (!ReservedSlotManager.canSlotAcceptItem(player, i, stack)) {
-                    continue; // Skip locked slots
-                }
-                
-                cir.setReturnValue(i);
-                return;
-            }
+        int slot = ReservedSlotManager.findSlotWithRemainingSpace(player, stack);
+        if (slot >= 0) {
+            cir.setReturnValue(slot);
         }
     }
 
@@ -97,19 +128,10 @@ public abstract class PlayerInventoryMixin {
      */
     @Inject(method = "getFreeSlot", at = @At("HEAD"), cancellable = true)
     private void onGetEmptySlot(CallbackInfoReturnable<Integer> cir) {
-        // Find first empty slot that isn't locked or inappropriately reserved
-        for (int i = 0; i < 36; i++) {
-            ItemStack currentStack = getItem(i);
-            if (currentStack.isEmpty()) {
-                // Check if this is a normal slot (not reserved or locked)
-                if (ReservedSlotManager.isNormalSlot(player, i)) {
-                    cir.setReturnValue(i);
-                    return;
-                }
-            }
-        }
+        if (!reservedslots$active) return;
         
-        // No normal empty slots found, return -1
-        cir.setReturnValue(-1);
+        // Find first empty slot that isn't locked or inappropriately reserved
+        // (-1 if no normal empty slots are left)
+        cir.setReturnValue(ReservedSlotManager.findFreeNormalSlot(player));
     }
 }
@@ -1,19 +1,35 @@
 package com.reservedslots.network;
 
 import com.reservedslots.ReservedSlotsMod;
+import com.reservedslots.common.PlayerSlotLayout;
 import com.reservedslots.common.SlotState;
 import net.minecraft.world.item.Item;
 import net.minecraft.core.registries.BuiltInRegistries;
 import net.minecraft.resources.Identifier;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * Client-side cache of reserved slot data received from the server.
+ *
+ * Toggles can be predicted: the predicted state is shown on top of the server's until a
+ * sync acknowledges the toggle's sequence number (confirming it, or rolling it back to
+ * whatever the server sent), or until it times out.
+ *
+ * Slots are held in arrays indexed by slot, and every change bumps generation(), so
+ * renderers can keep derived data until it changes.
  */
 public class ClientSlotDataCache {
-    private static final Map<Integer, CachedSlotData> slotData = new HashMap<>();
+    private static final long PREDICTION_TIMEOUT_NANOS = 2_000_000_000L;
+
+    // Non-NORMAL slots only; null means NORMAL
+    private static final CachedSlotData[] slotData = new CachedSlotData[PlayerSlotLayout.SIZE];
+    private static final Prediction[] predictions = new Prediction[PlayerSlotLayout.SIZE];
+    private static int predictionCount;
+    private static int generation;
+
+    private record Prediction(CachedSlotData data, int sequence, long deadline) {
+    }
 
     public static class CachedSlotData {
         public final SlotState state;
@@ -26,26 +42,113 @@ public class ClientSlotDataCache {
     }
 
     public static void setSlotData(int slotIndex, SlotState state, Identifier itemId) {
-        Item item = BuiltInRegistries.ITEM.getValue(itemId);
-        slotData.put(slotIndex, new CachedSlotData(state, item));
+        setSlotData(slotIndex, state, BuiltInRegistries.ITEM.getValue(itemId));
         ReservedSlotsMod.LOGGER.info("ClientSlotDataCache: Set slot {} to state {} with item {}", slotIndex, state, itemId);
     }
 
+    public static void setSlotData(int slotIndex, SlotState state, Item item) {
+        if (!PlayerSlotLayout.isValidSlot(slotIndex)) {
+            return;
+        }
+        slotData[slotIndex] = state == SlotState.NORMAL ? null : new CachedSlotData(state, item);
+        generation++;
+    }
+
+    /**
+     * The slot's displayed data (its prediction, if any, else the server's), or null if it is NORMAL.
+     */
     public static CachedSlotData getSlotData(int slotIndex) {
-        return slotData.get(slotIndex);
+        if (!PlayerSlotLayout.isValidSlot(slotIndex)) {
+            return null;
+        }
+        Prediction prediction = predictions[slotIndex];
+        if (prediction != null) {
+            return prediction.data.state == SlotState.NORMAL ? null : prediction.data;
+        }
+        return slotData[slotIndex];
+    }
+
+    /**
+     * The slot's data as last synced by the server, ignoring any prediction, or null if it is NORMAL.
+     */
+    public static CachedSlotData getServerSlotData(int slotIndex) {
+        return PlayerSlotLayout.isValidSlot(slotIndex) ? slotData[slotIndex] : null;
+    }
+
+    /**
+     * Incremented on every change to what getSlotData returns.
+     */
+    public static int generation() {
+        return generation;
+    }
+
+    /**
+     * Shows a slot's predicted state until the server acknowledges the toggle with this sequence.
+     */
+    public static void predict(int slotIndex, SlotState state, Item item, int sequence) {
+        if (predictions[slotIndex] == null) {
+            predictionCount++;
+        }
+        predictions[slotIndex] = new Prediction(new CachedSlotData(state, item), sequence, System.nanoTime() + PREDICTION_TIMEOUT_NANOS);
+        generation++;
+    }
+
+    /**
+     * Drops predictions for toggles up to and including this sequence; the server's state
+     * (already applied from the same sync) shows through again.
+     */
+    public static void acknowledge(int sequence) {
+        for (int i = 0; predictionCount > 0 && i < predictions.length; i++) {
+            if (predictions[i] != null && predictions[i].sequence - sequence <= 0) {
+                dropPrediction(i);
+            }
+        }
+    }
+
+    /**
+     * Rolls back predictions the server never answered.
+     */
+    public static void expirePredictions() {
+        if (predictionCount == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (int i = 0; i < predictions.length; i++) {
+            if (predictions[i] != null && now - predictions[i].deadline > 0) {
+                dropPrediction(i);
+                ReservedSlotsMod.LOGGER.warn("Rolled back reserved slot toggle the server did not acknowledge (slot {})", i);
+            }
+        }
     }
 
     public static void clear() {
-        slotData.clear();
+        Arrays.fill(slotData, null);
+        Arrays.fill(predictions, null);
+        predictionCount = 0;
+        generation++;
+    }
+
+    /**
+     * Clears the server's state ahead of a full sync, keeping unacknowledged predictions.
+     */
+    public static void clearServerData() {
+        Arrays.fill(slotData, null);
+        generation++;
+    }
+
+    private static void dropPrediction(int slotIndex) {
+        predictions[slotIndex] = null;
+        predictionCount--;
+        generation++;
     }
 
     public static boolean isReserved(int slotIndex) {
-        CachedSlotData data = slotData.get(slotIndex);
+        CachedSlotData data = getSlotData(slotIndex);
         return data != null && data.state == SlotState.RESERVED;
     }
 
     public static boolean isLocked(int slotIndex) {
-        CachedSlotData data = slotData.get(slotIndex);
+        CachedSlotData data = getSlotData(slotIndex);
         return data != null && data.state == SlotState.LOCKED;
     }
 }
@@ -0,0 +1,121 @@
+package com.reservedslots.network;
+
+import com.reservedslots.server.ReservedSlotManager;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Join-time sync that skips the full layout when the client already has it cached.
+ *
+ * Clients that support it send a HelloPayload with their cached layout's fingerprint as
+ * they join. Once the player's layout is installed on the server as well (the two can
+ * arrive in either order), the fingerprints are compared: a match gets a one-byte
+ * LayoutUnchangedPayload, anything else a full sync. Clients without the channel get
+ * a full sync straight away, and so does a client whose hello hasn't arrived within
+ * HELLO_TIMEOUT_TICKS of its layout being ready (a different build of the mod, or a
+ * cache that failed to load).
+ *
+ * Server thread only.
+ */
+public final class LayoutHandshake {
+    private static final int HELLO_TIMEOUT_TICKS = 40;
+
+    // Hellos received before the layout was installed, and layouts installed before the
+    // hello (with the tick at which to give up waiting for it)
+    private static final Map<UUID, Long> hellos = new HashMap<>();
+    private static final Map<UUID, Integer> ready = new HashMap<>();
+
+    private static long unchangedReplies;
+    private static long fullReplies;
+
+    /**
+     * Counters: joins answered with "unchanged" versus a full sync.
+     */
+    public record Stats(long unchangedReplies, long fullReplies) {
+    }
+
+    private LayoutHandshake() {
+    }
+
+    /**
+     * Must be registered before SlotSyncOutbox, so a timed-out join syncs the same tick.
+     */
+    public static void register() {
+        ServerTickEvents.END_SERVER_TICK.register(LayoutHandshake::expireWaits);
+    }
+
+    /**
+     * Called once the player's layout has been installed.
+     */
+    public static void layoutReady(ServerPlayer player) {
+        if (!ServerPlayNetworking.canSend(player, ReservedSlotPackets.LayoutUnchangedPayload.ID)) {
+            fullReplies++;
+            SlotSyncOutbox.markFull(player);
+            return;
+        }
+        Long fingerprint = hellos.remove(player.getUUID());
+        if (fingerprint == null) {
+            ready.put(player.getUUID(), player.level().getServer().getTickCount() + HELLO_TIMEOUT_TICKS);
+        } else {
+            reply(player, fingerprint);
+        }
+    }
+
+    static void onHello(ServerPlayer player, long fingerprint) {
+        if (ready.remove(player.getUUID()) != null) {
+            reply(player, fingerprint);
+        } else {
+            hellos.put(player.getUUID(), fingerprint);
+        }
+    }
+
+    public static void clear(UUID playerId) {
+        hellos.remove(playerId);
+        ready.remove(playerId);
+    }
+
+    public static void clearAll() {
+        hellos.clear();
+        ready.clear();
+    }
+
+    public static Stats stats() {
+        return new Stats(unchangedReplies, fullReplies);
+    }
+
+    private static void expireWaits(MinecraftServer server) {
+        if (ready.isEmpty()) {
+            return;
+        }
+        int now = server.getTickCount();
+        for (Iterator<Map.Entry<UUID, Integer>> it = ready.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<UUID, Integer> entry = it.next();
+            if (now - entry.getValue() < 0) {
+                continue;
+            }
+            it.remove();
+            ServerPlayer player = server.getPlayerList().getPlayer(entry.getKey());
+            if (player != null) {
+                fullReplies++;
+                SlotSyncOutbox.markFull(player);
+            }
+        }
+    }
+
+    private static void reply(ServerPlayer player, long clientFingerprint) {
+        if (ReservedSlotManager.snapshotPlayerData(player).fingerprint() == clientFingerprint) {
+            unchangedReplies++;
+            ReservedSlotPackets.sendUnchanged(player);
+        } else {
+            fullReplies++;
+            SlotSyncOutbox.markFull(player);
+        }
+    }
+}
@@ -1,15 +1,18 @@
 package com.reservedslots.network;
 
 import com.reservedslots.ReservedSlotsMod;
+import com.reservedslots.common.PlayerSlotLayout;
 import com.reservedslots.common.ReservedSlotData;
 import com.reservedslots.common.SlotState;
-import com.reservedslots.server.ReservedSlotManager;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.DecoderException;
 import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
 import net.fabricmc.fabric.api.networking.v1.PayloadTypeRegistry;
 import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
 import net.minecraft.world.item.Item;
 import net.minecraft.world.item.ItemStack;
 import net.minecraft.network.RegistryFriendlyByteBuf;
+import net.minecraft.network.VarInt;
 import net.minecraft.network.codec.StreamCodec;
 import net.minecraft.network.codec.ByteBufCodecs;
 import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
@@ -26,8 +29,17 @@ import java.util.Map;
 public class ReservedSlotPackets {
     // Packet IDs
     public static final Identifier TOGGLE_SLOT_ID = Identifier.fromNamespaceAndPath(ReservedSlotsMod.MOD_ID, "toggle_slot");
+    public static final Identifier PREDICTED_TOGGLE_ID = Identifier.fromNamespaceAndPath(ReservedSlotsMod.MOD_ID, "toggle_v2");
     public static final Identifier SYNC_SLOT_ID = Identifier.fromNamespaceAndPath(ReservedSlotsMod.MOD_ID, "sync_slot");
     public static final Identifier FULL_SYNC_ID = Identifier.fromNamespaceAndPath(ReservedSlotsMod.MOD_ID, "full_sync");
+    public static final Identifier LAYOUT_SYNC_ID = Identifier.fromNamespaceAndPath(ReservedSlotsMod.MOD_ID, "sync_v2");
+    public static final Identifier ACKED_LAYOUT_SYNC_ID = Identifier.fromNamespaceAndPath(ReservedSlotsMod.MOD_ID, "sync_v3");
+    public static final Identifier HELLO_ID = Identifier.fromNamespaceAndPath(ReservedSlotsMod.MOD_ID, "hello");
+    public static final Identifier LAYOUT_UNCHANGED_ID = Identifier.fromNamespaceAndPath(ReservedSlotsMod.MOD_ID, "layout_unchanged");
+
+    // Sync traffic counters, server thread only
+    private static long packetsSent;
+    private static long payloadBytesSent;
 
     /**
      * Packet sent from client to server to toggle a slot's state.
@@ -45,6 +57,24 @@ public class ReservedSlotPackets {
         }
     }
 
+    /**
+     * Toggle request from a client that has already shown the result. The server echoes
+     * the sequence number back in AckedLayoutSyncPayload.ack once it has handled the toggle.
+     */
+    public record PredictedTogglePayload(int slotIndex, int sequence) implements CustomPacketPayload {
+        public static final CustomPacketPayload.Type<PredictedTogglePayload> ID = new CustomPacketPayload.Type<>(PREDICTED_TOGGLE_ID);
+        public static final StreamCodec<RegistryFriendlyByteBuf, PredictedTogglePayload> CODEC = StreamCodec.composite(
+            ByteBufCodecs.VAR_INT, PredictedTogglePayload::slotIndex,
+            ByteBufCodecs.VAR_INT, PredictedTogglePayload::sequence,
+            PredictedTogglePayload::new
+        );
+
+        @Override
+        public CustomPacketPayload.Type<? extends CustomPacketPayload> type() {
+            return ID;
+        }
+    }
+
     /**
      * Packet sent from server to client to sync a single slot's state.
      */
@@ -103,23 +133,284 @@ public class ReservedSlotPackets {
         }
     }
 
+    /**
+     * Compact server-to-client sync of a whole layout (full) or of some slots (delta).
+     * Clients that register this channel get it instead of SyncSlotPayload/FullSyncPayload,
+     * which remain for older clients.
+     *
+     * <pre>
+     * version   1 byte
+     * full      1 byte, 1 = slots outside the mask are NORMAL, 0 = only masked slots change
+     * mask      6 bytes, bit i = slot i is included
+     * states    2 bits per set mask bit, packed low bits first
+     * palette   varint count, then that many item registry network ids (varint)
+     * items     per set mask bit: varint palette index + 1 (0 = no item)
+     * </pre>
+     *
+     * A typical join sync is a dozen bytes instead of a VarInt pair and an identifier
+     * string per slot.
+     */
+    public record LayoutSyncPayload(boolean full, long mask, byte[] states, int[] itemIds) implements CustomPacketPayload {
+        public static final int VERSION = 1;
+        public static final CustomPacketPayload.Type<LayoutSyncPayload> ID = new CustomPacketPayload.Type<>(LAYOUT_SYNC_ID);
+        public static final StreamCodec<RegistryFriendlyByteBuf, LayoutSyncPayload> CODEC = StreamCodec.of(
+            (buf, value) -> value.write(buf),
+            LayoutSyncPayload::read
+        );
+
+        /**
+         * Builds a payload from per-slot data; NORMAL entries are included too, so a delta can clear slots.
+         */
+        static LayoutSyncPayload of(boolean full, Map<Integer, ReservedSlotData> slots) {
+            long mask = 0;
+            byte[] states = new byte[PlayerSlotLayout.SIZE];
+            int[] itemIds = new int[PlayerSlotLayout.SIZE];
+            for (Map.Entry<Integer, ReservedSlotData> entry : slots.entrySet()) {
+                int index = entry.getKey();
+                ReservedSlotData data = entry.getValue();
+                if (!PlayerSlotLayout.isValidSlot(index) || (full && data.getState() == SlotState.NORMAL)) {
+                    continue;
+                }
+                mask |= 1L << index;
+                states[index] = (byte) data.getState().ordinal();
+                itemIds[index] = data.getReservedItem() != null && data.getState() != SlotState.NORMAL
+                    ? BuiltInRegistries.ITEM.getId(data.getReservedItem()) : -1;
+            }
+            return new LayoutSyncPayload(full, mask, states, itemIds);
+        }
+
+        /**
+         * Size of the encoded payload in bytes, without encoding it.
+         */
+        int encodedSize() {
+            int count = Long.bitCount(mask);
+            int size = 8 + (count * 2 + 7) / 8;
+            int[] palette = new int[count];
+            int paletteSize = 0;
+            for (long m = mask; m != 0; m &= m - 1) {
+                int id = itemIds[Long.numberOfTrailingZeros(m)];
+                if (id < 0) {
+                    size += 1;
+                    continue;
+                }
+                int p = 0;
+                while (p < paletteSize && palette[p] != id) {
+                    p++;
+                }
+                if (p == paletteSize) {
+                    palette[paletteSize++] = id;
+                    size += VarInt.getByteSize(id);
+                }
+                size += VarInt.getByteSize(p + 1);
+            }
+            return size + VarInt.getByteSize(paletteSize);
+        }
+
+        public SlotState state(int slotIndex) {
+            return SlotState.values()[states[slotIndex]];
+        }
+
+        /**
+         * The reserved item of a slot in the mask, or null.
+         */
+        public Item item(int slotIndex) {
+            return itemIds[slotIndex] < 0 ? null : BuiltInRegistries.ITEM.byId(itemIds[slotIndex]);
+        }
+
+        private void write(RegistryFriendlyByteBuf buf) {
+            buf.writeByte(VERSION);
+            buf.writeBoolean(full);
+            buf.writeShort((int) (mask >>> 32));
+            buf.writeInt((int) mask);
+
+            int bits = 0;
+            int used = 0;
+            for (long m = mask; m != 0; m &= m - 1) {
+                bits |= (states[Long.numberOfTrailingZeros(m)] & 0b11) << used;
+                used += 2;
+                if (used == 8) {
+                    buf.writeByte(bits);
+                    bits = 0;
+                    used = 0;
+                }
+            }
+            if (used > 0) {
+                buf.writeByte(bits);
+            }
+
+            // Palette of distinct network ids, in first-use order
+            int[] palette = new int[Long.bitCount(mask)];
+            int paletteSize = 0;
+            int[] refs = new int[PlayerSlotLayout.SIZE];
+            for (long m = mask; m != 0; m &= m - 1) {
+                int index = Long.numberOfTrailingZeros(m);
+                int id = itemIds[index];
+                if (id < 0) {
+                    continue;
+                }
+                int p = 0;
+                while (p < paletteSize && palette[p] != id) {
+                    p++;
+                }
+                if (p == paletteSize) {
+                    palette[paletteSize++] = id;
+                }
+                refs[index] = p + 1;
+            }
+            buf.writeVarInt(paletteSize);
+            for (int p = 0; p < paletteSize; p++) {
+                buf.writeVarInt(palette[p]);
+            }
+            for (long m = mask; m != 0; m &= m - 1) {
+                buf.writeVarInt(refs[Long.numberOfTrailingZeros(m)]);
+            }
+        }
+
+        private static LayoutSyncPayload read(RegistryFriendlyByteBuf buf) {
+            int version = buf.readUnsignedByte();
+            if (version != VERSION) {
+                throw new DecoderException("Unsupported reserved slot sync version " + version);
+            }
+            boolean full = buf.readBoolean();
+            long mask = ((long) buf.readUnsignedShort() << 32) | (buf.readInt() & 0xFFFFFFFFL);
+            if ((mask >>> PlayerSlotLayout.SIZE) != 0) {
+                throw new DecoderException("Slot mask has bits beyond slot " + (PlayerSlotLayout.SIZE - 1));
+            }
+
+            byte[] states = new byte[PlayerSlotLayout.SIZE];
+            int bits = 0;
+            int available = 0;
+            for (long m = mask; m != 0; m &= m - 1) {
+                if (available == 0) {
+                    bits = buf.readUnsignedByte();
+                    available = 8;
+                }
+                int state = bits & 0b11;
+                if (state >= SlotState.values().length) {
+                    throw new DecoderException("Invalid slot state " + state);
+                }
+                states[Long.numberOfTrailingZeros(m)] = (byte) state;
+                bits >>>= 2;
+                available -= 2;
+            }
+
+            int paletteSize = buf.readVarInt();
+            if (paletteSize < 0 || paletteSize > Long.bitCount(mask)) {
+                throw new DecoderException("Palette too large: " + paletteSize);
+            }
+            int[] palette = new int[paletteSize];
+            for (int p = 0; p < paletteSize; p++) {
+                palette[p] = buf.readVarInt();
+            }
+
+            int[] itemIds = new int[PlayerSlotLayout.SIZE];
+            for (long m = mask; m != 0; m &= m - 1) {
+                int ref = buf.readVarInt();
+                if (ref < 0 || ref > paletteSize) {
+                    throw new DecoderException("Palette index out of range: " + ref);
+                }
+                itemIds[Long.numberOfTrailingZeros(m)] = ref == 0 ? -1 : palette[ref - 1];
+            }
+            return new LayoutSyncPayload(full, mask, states, itemIds);
+        }
+
+        @Override
+        public CustomPacketPayload.Type<? extends CustomPacketPayload> type() {
+            return ID;
+        }
+    }
+
+    /**
+     * LayoutSyncPayload plus the highest PredictedTogglePayload sequence the server has
+     * handled (0 = none), on its own channel so clients without it keep getting the plain
+     * sync. Encoded as a varint ack followed by the LayoutSyncPayload encoding.
+     */
+    public record AckedLayoutSyncPayload(int ack, LayoutSyncPayload sync) implements CustomPacketPayload {
+        public static final CustomPacketPayload.Type<AckedLayoutSyncPayload> ID = new CustomPacketPayload.Type<>(ACKED_LAYOUT_SYNC_ID);
+        public static final StreamCodec<RegistryFriendlyByteBuf, AckedLayoutSyncPayload> CODEC = StreamCodec.of(
+            (buf, value) -> {
+                buf.writeVarInt(value.ack);
+                value.sync.write(buf);
+            },
+            buf -> new AckedLayoutSyncPayload(buf.readVarInt(), LayoutSyncPayload.read(buf))
+        );
+
+        @Override
+        public CustomPacketPayload.Type<? extends CustomPacketPayload> type() {
+            return ID;
+        }
+    }
+
+    /**
+     * Packet sent from client to server on join with the fingerprint (StoredLayout.fingerprint())
+     * of the layout it cached for this server last time.
+     */
+    public record HelloPayload(long fingerprint) implements CustomPacketPayload {
+        public static final CustomPacketPayload.Type<HelloPayload> ID = new CustomPacketPayload.Type<>(HELLO_ID);
+        public static final StreamCodec<RegistryFriendlyByteBuf, HelloPayload> CODEC = StreamCodec.composite(
+            ByteBufCodecs.LONG, HelloPayload::fingerprint,
+            HelloPayload::new
+        );
+
+        @Override
+        public CustomPacketPayload.Type<? extends CustomPacketPayload> type() {
+            return ID;
+        }
+    }
+
+    /**
+     * Reply to HelloPayload when the client's cached layout is current, instead of a full sync.
+     */
+    public record LayoutUnchangedPayload() implements CustomPacketPayload {
+        public static final LayoutUnchangedPayload INSTANCE = new LayoutUnchangedPayload();
+        public static final CustomPacketPayload.Type<LayoutUnchangedPayload> ID = new CustomPacketPayload.Type<>(LAYOUT_UNCHANGED_ID);
+        public static final StreamCodec<RegistryFriendlyByteBuf, LayoutUnchangedPayload> CODEC = StreamCodec.unit(INSTANCE);
+
+        @Override
+        public CustomPacketPayload.Type<? extends CustomPacketPayload> type() {
+            return ID;
+        }
+    }
+
     /**
      * Registers all network packets.
      */
     public static void register() {
         // Register payload types
         PayloadTypeRegistry.serverboundPlay().register(ToggleSlotPayload.ID, ToggleSlotPayload.CODEC);
+        PayloadTypeRegistry.serverboundPlay().register(PredictedTogglePayload.ID, PredictedTogglePayload.CODEC);
+        PayloadTypeRegistry.serverboundPlay().register(HelloPayload.ID, HelloPayload.CODEC);
         PayloadTypeRegistry.clientboundPlay().register(SyncSlotPayload.ID, SyncSlotPayload.CODEC);
         PayloadTypeRegistry.clientboundPlay().register(FullSyncPayload.ID, FullSyncPayload.CODEC);
+        PayloadTypeRegistry.clientboundPlay().register(LayoutSyncPayload.ID, LayoutSyncPayload.CODEC);
+        PayloadTypeRegistry.clientboundPlay().register(AckedLayoutSyncPayload.ID, AckedLayoutSyncPayload.CODEC);
+        PayloadTypeRegistry.clientboundPlay().register(LayoutUnchangedPayload.ID, LayoutUnchangedPayload.CODEC);
+
+        // Toggles are applied, then outgoing syncs batched, at the end of each tick (in this order)
+        ToggleThrottle.register();
+        LayoutHandshake.register();
+        SlotSyncOutbox.register();
+
+        registerHandshake();
 
-        // Server-side handler for toggle requests
+        // Server-side handlers for toggle requests. Play receivers already run on the server
+        // thread, so requests go straight to the throttle without queueing a task each.
         ServerPlayNetworking.registerGlobalReceiver(ToggleSlotPayload.ID, (payload, context) -> {
-            ReservedSlotsMod.LOGGER.info("Server received toggle request for slot {}", payload.slotIndex());
-            context.server().execute(() -> {
-                ServerPlayer player = context.player();
-                ReservedSlotsMod.LOGGER.info("Processing toggle for player {}", player.getName().getString());
-                ReservedSlotManager.toggleSlot(player, payload.slotIndex());
-            });
+            ToggleThrottle.offer(context.player(), payload.slotIndex(), 0);
+        });
+
+        // Same, acknowledged so the client can confirm or roll back its prediction
+        ServerPlayNetworking.registerGlobalReceiver(PredictedTogglePayload.ID, (payload, context) -> {
+            ToggleThrottle.offer(context.player(), payload.slotIndex(), payload.sequence());
+        });
+    }
+
+    /**
+     * Registers the server-side handler for the join handshake.
+     */
+    private static void registerHandshake() {
+        ServerPlayNetworking.registerGlobalReceiver(HelloPayload.ID, (payload, context) -> {
+            LayoutHandshake.onHello(context.player(), payload.fingerprint());
         });
     }
 
@@ -152,6 +443,36 @@ public class ReservedSlotPackets {
                 });
             });
         });
+
+        // The cached layout loaded at join is current; nothing to apply
+        ClientPlayNetworking.registerGlobalReceiver(LayoutUnchangedPayload.ID, (payload, context) -> {
+            ReservedSlotsMod.LOGGER.info("Server confirmed cached reserved slot layout");
+        });
+
+        // Client-side handler for compact full and delta syncs
+        ClientPlayNetworking.registerGlobalReceiver(LayoutSyncPayload.ID, (payload, context) -> {
+            context.client().execute(() -> applyLayoutSync(payload));
+        });
+
+        // Same, from servers that acknowledge predicted toggles
+        ClientPlayNetworking.registerGlobalReceiver(AckedLayoutSyncPayload.ID, (payload, context) -> {
+            context.client().execute(() -> {
+                applyLayoutSync(payload.sync());
+                if (payload.ack() != 0) {
+                    ClientSlotDataCache.acknowledge(payload.ack());
+                }
+            });
+        });
+    }
+
+    private static void applyLayoutSync(LayoutSyncPayload payload) {
+        if (payload.full()) {
+            ClientSlotDataCache.clearServerData();
+        }
+        for (long mask = payload.mask(); mask != 0; mask &= mask - 1) {
+            int index = Long.numberOfTrailingZeros(mask);
+            ClientSlotDataCache.setSlotData(index, payload.state(index), payload.item(index));
+        }
     }
 
     /**
@@ -164,33 +485,126 @@ public class ReservedSlotPackets {
     }
 
     /**
-     * Sends a slot sync packet from server to client.
+     * Whether the server acknowledges toggles, so the client may predict them.
      */
-    public static void sendSyncPacket(ServerPlayer player, int slotIndex, ReservedSlotData data) {
-        Identifier itemId = data.getReservedItem() != null 
-            ? BuiltInRegistries.ITEM.getKey(data.getReservedItem())
-            : Identifier.fromNamespaceAndPath("minecraft", "air");
+    public static boolean canPredictToggles() {
+        return ClientPlayNetworking.canSend(PredictedTogglePayload.ID);
+    }
+
+    /**
+     * Sends a toggle request whose result the client is already showing.
+     */
+    public static void sendPredictedToggle(int slotIndex, int sequence) {
+        ClientPlayNetworking.send(new PredictedTogglePayload(slotIndex, sequence));
+    }
+
+    /**
+     * Sends changes to several slots: a single packet to current clients, one packet per
+     * slot to older ones.
+     */
+    public static void sendDeltaPacket(ServerPlayer player, Map<Integer, ReservedSlotData> changed) {
+        sendDeltaPacket(player, changed, 0);
+    }
+
+    /**
+     * Sends changes to several slots, acknowledging predicted toggles up to ack (0 = none).
+     * Older clients never predict, so they only get the changes.
+     */
+    public static void sendDeltaPacket(ServerPlayer player, Map<Integer, ReservedSlotData> changed, int ack) {
+        if (sendLayoutSync(player, false, changed, ack)) {
+            return;
+        }
         
-        ServerPlayNetworking.send(player, new SyncSlotPayload(slotIndex, data.getState(), itemId));
+        changed.forEach((index, data) -> {
+            Identifier itemId = legacyItemId(data);
+            send(player, new SyncSlotPayload(index, data.getState(), itemId),
+                VarInt.getByteSize(index) + VarInt.getByteSize(data.getState().ordinal()) + identifierSize(itemId));
+        });
     }
 
     /**
      * Sends a full sync packet from server to client.
      */
     public static void sendFullSyncPacket(ServerPlayer player, Map<Integer, ReservedSlotData> allData) {
+        sendFullSyncPacket(player, allData, 0);
+    }
+
+    /**
+     * Sends a full sync packet, acknowledging predicted toggles up to ack (0 = none).
+     */
+    public static void sendFullSyncPacket(ServerPlayer player, Map<Integer, ReservedSlotData> allData, int ack) {
+        if (sendLayoutSync(player, true, allData, ack)) {
+            // Sent even when empty, so the client drops anything left from before
+            return;
+        }
+        
         Map<Integer, FullSyncPayload.SlotData> syncData = new HashMap<>();
+        int[] size = {0};
         
         allData.forEach((index, data) -> {
             if (data.getState() != SlotState.NORMAL) {
-                Identifier itemId = data.getReservedItem() != null
-                    ? BuiltInRegistries.ITEM.getKey(data.getReservedItem())
-                    : Identifier.fromNamespaceAndPath("minecraft", "air");
+                Identifier itemId = legacyItemId(data);
                 syncData.put(index, new FullSyncPayload.SlotData(data.getState(), itemId));
+                size[0] += VarInt.getByteSize(index) + VarInt.getByteSize(data.getState().ordinal()) + identifierSize(itemId);
             }
         });
         
         if (!syncData.isEmpty()) {
-            ServerPlayNetworking.send(player, new FullSyncPayload(syncData));
+            send(player, new FullSyncPayload(syncData), VarInt.getByteSize(syncData.size()) + size[0]);
+        }
+    }
+
+    /**
+     * Sends a compact sync on the newest channel the client has; acknowledgements are
+     * dropped for clients without the acked channel, which never predict. Returns false
+     * if the client only understands the legacy payloads.
+     */
+    private static boolean sendLayoutSync(ServerPlayer player, boolean full, Map<Integer, ReservedSlotData> slots, int ack) {
+        if (ServerPlayNetworking.canSend(player, AckedLayoutSyncPayload.ID)) {
+            LayoutSyncPayload sync = LayoutSyncPayload.of(full, slots);
+            send(player, new AckedLayoutSyncPayload(ack, sync), VarInt.getByteSize(ack) + sync.encodedSize());
+            return true;
+        }
+        if (ServerPlayNetworking.canSend(player, LayoutSyncPayload.ID)) {
+            LayoutSyncPayload sync = LayoutSyncPayload.of(full, slots);
+            send(player, sync, sync.encodedSize());
+            return true;
         }
+        return false;
+    }
+
+    /**
+     * Tells a client its cached layout is current.
+     */
+    public static void sendUnchanged(ServerPlayer player) {
+        send(player, LayoutUnchangedPayload.INSTANCE, 0);
+    }
+
+    /**
+     * Counters for server-to-client sync traffic. Bytes are payload bytes, before
+     * packet framing and compression.
+     */
+    public record SyncStats(long packets, long bytes) {
+    }
+
+    public static SyncStats syncStats() {
+        return new SyncStats(packetsSent, payloadBytesSent);
+    }
+
+    private static void send(ServerPlayer player, CustomPacketPayload payload, int payloadBytes) {
+        ServerPlayNetworking.send(player, payload);
+        packetsSent++;
+        payloadBytesSent += payloadBytes;
+    }
+
+    private static Identifier legacyItemId(ReservedSlotData data) {
+        return data.getReservedItem() != null
+            ? BuiltInRegistries.ITEM.getKey(data.getReservedItem())
+            : Identifier.fromNamespaceAndPath("minecraft", "air");
+    }
+
+    private static int identifierSize(Identifier id) {
+        int length = ByteBufUtil.utf8Bytes(id.toString());
+        return VarInt.getByteSize(length) + length;
     }
 }
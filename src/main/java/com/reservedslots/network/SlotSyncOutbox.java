@@ -0,0 +1,118 @@
+package com.reservedslots.network;
+
+import com.reservedslots.common.ReservedSlotData;
+import com.reservedslots.server.ReservedSlotManager;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.minecraft.server.level.ServerPlayer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Per-player queue of slot changes to sync, flushed once at the end of each server tick.
+ *
+ * Changes only mark slots dirty; the flush reads their current state, so any number of
+ * updates to a slot within a tick collapse into one, and all of a player's changed slots
+ * go out as a single delta packet (or a full sync, if one was requested). The packet also
+ * acknowledges the player's predicted toggles handled this tick.
+ *
+ * Server thread only.
+ */
+public final class SlotSyncOutbox {
+    private static final Map<UUID, Pending> outbox = new HashMap<>();
+
+    private static long slotUpdates;
+    private static long collapsedUpdates;
+
+    private static final class Pending {
+        final ServerPlayer player;
+        long dirtyMask;
+        boolean full;
+        int ack; // Highest PredictedTogglePayload sequence handled, 0 = none
+
+        Pending(ServerPlayer player) {
+            this.player = player;
+        }
+    }
+
+    /**
+     * Counters: slot updates queued, how many of them collapsed into an update already
+     * pending, and what was actually sent (see ReservedSlotPackets.SyncStats).
+     */
+    public record Stats(long slotUpdates, long collapsedUpdates, long packets, long bytes) {
+    }
+
+    private SlotSyncOutbox() {
+    }
+
+    public static void register() {
+        ServerTickEvents.END_SERVER_TICK.register(server -> flush());
+    }
+
+    /**
+     * Queues a sync of one slot's current state.
+     */
+    public static void markSlot(ServerPlayer player, int slotIndex) {
+        Pending pending = outbox.computeIfAbsent(player.getUUID(), id -> new Pending(player));
+        long bit = 1L << slotIndex;
+        slotUpdates++;
+        if (pending.full || (pending.dirtyMask & bit) != 0) {
+            collapsedUpdates++;
+        }
+        pending.dirtyMask |= bit;
+    }
+
+    /**
+     * Queues a full sync, which covers any slot changes already queued.
+     */
+    public static void markFull(ServerPlayer player) {
+        outbox.computeIfAbsent(player.getUUID(), id -> new Pending(player)).full = true;
+    }
+
+    /**
+     * Queues an acknowledgement of a predicted toggle, sent even if the toggle changed nothing.
+     */
+    public static void ack(ServerPlayer player, int sequence) {
+        Pending pending = outbox.computeIfAbsent(player.getUUID(), id -> new Pending(player));
+        if (pending.ack == 0 || sequence - pending.ack > 0) {
+            pending.ack = sequence;
+        }
+    }
+
+    public static void clear(UUID playerId) {
+        outbox.remove(playerId);
+    }
+
+    public static void clearAll() {
+        outbox.clear();
+    }
+
+    public static Stats stats() {
+        ReservedSlotPackets.SyncStats sent = ReservedSlotPackets.syncStats();
+        return new Stats(slotUpdates, collapsedUpdates, sent.packets(), sent.bytes());
+    }
+
+    private static void flush() {
+        if (outbox.isEmpty()) {
+            return;
+        }
+        for (Pending pending : outbox.values()) {
+            ServerPlayer player = pending.player;
+            if (player.hasDisconnected()) {
+                continue;
+            }
+            if (pending.full) {
+                ReservedSlotPackets.sendFullSyncPacket(player, ReservedSlotManager.getAllSlotData(player.getUUID()), pending.ack);
+                continue;
+            }
+            Map<Integer, ReservedSlotData> changed = new HashMap<>();
+            for (long mask = pending.dirtyMask; mask != 0; mask &= mask - 1) {
+                int index = Long.numberOfTrailingZeros(mask);
+                changed.put(index, ReservedSlotManager.getSlotData(player.getUUID(), index));
+            }
+            ReservedSlotPackets.sendDeltaPacket(player, changed, pending.ack);
+        }
+        outbox.clear();
+    }
+}
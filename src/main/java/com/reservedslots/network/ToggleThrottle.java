@@ -0,0 +1,164 @@
+package com.reservedslots.network;
+
+import com.reservedslots.ReservedSlotsConfig;
+import com.reservedslots.ReservedSlotsMod;
+import com.reservedslots.common.PlayerSlotLayout;
+import com.reservedslots.common.SlotState;
+import com.reservedslots.server.ReservedSlotManager;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Admission control for toggle requests, in front of ReservedSlotManager.toggleSlot.
+ *
+ * Each player has a token bucket (toggleRate per second, up to toggleBurst at once);
+ * requests beyond it are dropped, as are out-of-range slots. Admitted toggles are applied
+ * at the end of the tick, before SlotSyncOutbox flushes, and toggles of the same slot in
+ * one tick coalesce into the number of steps that would actually change it (see
+ * effectiveToggles). Every slot a request was dropped or handled for is resynced along
+ * with the acknowledgement, so a client that predicted it ends up on the server's state.
+ *
+ * Server thread only.
+ */
+public final class ToggleThrottle {
+    private static final Map<UUID, PlayerToggles> players = new HashMap<>();
+
+    private static long accepted;
+    private static long coalesced;
+    private static long dropped;
+    private static long invalid;
+
+    static final class PlayerToggles {
+        final int[] counts = new int[PlayerSlotLayout.SIZE]; // Toggles pending per slot this tick
+        long pendingMask;
+        double tokens;
+        long refilledAt;
+
+        PlayerToggles(long now) {
+            this.tokens = ReservedSlotsConfig.toggleBurst();
+            this.refilledAt = now;
+        }
+
+        boolean tryAcquire(long now) {
+            tokens = Math.min(ReservedSlotsConfig.toggleBurst(),
+                tokens + (now - refilledAt) * ReservedSlotsConfig.toggleRate() / 1_000_000_000.0);
+            refilledAt = now;
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+    }
+
+    /**
+     * Counters: toggles admitted, admitted toggles that landed on a slot already pending
+     * this tick, and requests dropped by the rate limit or for an invalid slot.
+     */
+    public record Stats(long accepted, long coalesced, long dropped, long invalid) {
+    }
+
+    private ToggleThrottle() {
+    }
+
+    /**
+     * Must be registered before SlotSyncOutbox, so toggles are applied before the flush.
+     */
+    public static void register() {
+        ServerTickEvents.END_SERVER_TICK.register(ToggleThrottle::drain);
+    }
+
+    /**
+     * Admits or drops a toggle request. sequence is the client's prediction sequence, 0 if
+     * it didn't predict. It is acknowledged either way, together with a resync of the slot,
+     * so a dropped toggle's prediction is replaced by the unchanged server state. Clients
+     * never predict out-of-range slots, so those are not acknowledged; a later
+     * acknowledgement covers their sequence.
+     */
+    static void offer(ServerPlayer player, int slotIndex, int sequence) {
+        if (!PlayerSlotLayout.isValidSlot(slotIndex)) {
+            invalid++;
+            ReservedSlotsMod.LOGGER.debug("Ignoring toggle for out-of-range slot {} from {}",
+                slotIndex, player.getName().getString());
+            return;
+        }
+
+        long now = System.nanoTime();
+        PlayerToggles toggles = players.computeIfAbsent(player.getUUID(), id -> new PlayerToggles(now));
+        if (sequence != 0) {
+            SlotSyncOutbox.ack(player, sequence);
+        }
+        if (!toggles.tryAcquire(now)) {
+            dropped++;
+            SlotSyncOutbox.markSlot(player, slotIndex);
+            return;
+        }
+        accepted++;
+        long bit = 1L << slotIndex;
+        if ((toggles.pendingMask & bit) != 0) {
+            coalesced++;
+        }
+        toggles.pendingMask |= bit;
+        toggles.counts[slotIndex]++;
+    }
+
+    /**
+     * How many of count toggles in a row actually change a slot in the given state, as
+     * ReservedSlotManager.toggleSlot applies them. With a stack in the slot the state cycles
+     * NORMAL -> RESERVED -> LOCKED -> NORMAL, so only count mod 3 matters. An empty slot
+     * can't be reserved, so it stops once it reaches NORMAL.
+     */
+    static int effectiveToggles(SlotState state, boolean slotEmpty, int count) {
+        if (!slotEmpty) {
+            return count % 3;
+        }
+        int toNormal = switch (state) {
+            case NORMAL -> 0;
+            case RESERVED -> 2;
+            case LOCKED -> 1;
+        };
+        return Math.min(count, toNormal);
+    }
+
+    public static void clear(UUID playerId) {
+        players.remove(playerId);
+    }
+
+    public static void clearAll() {
+        players.clear();
+    }
+
+    public static Stats stats() {
+        return new Stats(accepted, coalesced, dropped, invalid);
+    }
+
+    private static void drain(MinecraftServer server) {
+        for (Map.Entry<UUID, PlayerToggles> entry : players.entrySet()) {
+            PlayerToggles toggles = entry.getValue();
+            if (toggles.pendingMask == 0) {
+                continue;
+            }
+            // Looked up each time: respawning or leaving the End replaces the ServerPlayer
+            ServerPlayer player = server.getPlayerList().getPlayer(entry.getKey());
+            for (long mask = toggles.pendingMask; mask != 0; mask &= mask - 1) {
+                int index = Long.numberOfTrailingZeros(mask);
+                if (player != null) {
+                    int steps = effectiveToggles(ReservedSlotManager.getSlotData(player, index).getState(),
+                        player.getInventory().getItem(index).isEmpty(), toggles.counts[index]);
+                    for (int i = 0; i < steps; i++) {
+                        ReservedSlotManager.toggleSlot(player, index);
+                    }
+                    // Also confirms toggles that changed nothing
+                    SlotSyncOutbox.markSlot(player, index);
+                }
+                toggles.counts[index] = 0;
+            }
+            toggles.pendingMask = 0;
+        }
+    }
+}
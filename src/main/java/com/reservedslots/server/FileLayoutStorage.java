@@ -0,0 +1,126 @@
+package com.reservedslots.server;
+
+import com.reservedslots.ReservedSlotsMod;
+import com.reservedslots.common.CompactLayoutCodec;
+import com.reservedslots.common.StoredLayout;
+import net.minecraft.nbt.NbtAccounter;
+import net.minecraft.nbt.NbtIo;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * The default backend: one small file per player under {@code <world>/reservedslots/},
+ * keyed by player name. Files use CompactLayoutCodec; files still in gzip NBT (from
+ * earlier versions) are read as a fallback and rewritten in the compact format on their
+ * next change. Each write goes to a temp file that is atomically renamed over the real
+ * one, so a crash mid-write never leaves a truncated file.
+ */
+public final class FileLayoutStorage implements LayoutStorage {
+    private static final String PLAYER_FILE_SUFFIX = ".dat";
+
+    private final Path directory;
+
+    public FileLayoutStorage(Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public StoredLayout load(String storageKey) throws IOException {
+        Path file = playerFile(storageKey);
+        return Files.exists(file) ? readPlayerFile(file) : null;
+    }
+
+    @Override
+    public void saveBatch(Map<String, StoredLayout> batch) throws IOException {
+        IOException failure = null;
+        for (Map.Entry<String, StoredLayout> entry : batch.entrySet()) {
+            try {
+                if (entry.getValue() == null) {
+                    delete(entry.getKey());
+                } else {
+                    writePlayerFile(entry.getKey(), entry.getValue());
+                }
+            } catch (IOException e) {
+                // Keep going so one bad file doesn't hold back everyone else
+                ReservedSlotsMod.LOGGER.error("Failed to save reserved slot data for {}", entry.getKey(), e);
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public void delete(String storageKey) throws IOException {
+        Files.deleteIfExists(playerFile(storageKey));
+    }
+
+    @Override
+    public void forEach(BiConsumer<String, StoredLayout> action) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + PLAYER_FILE_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String storageKey = URLDecoder.decode(
+                    name.substring(0, name.length() - PLAYER_FILE_SUFFIX.length()), StandardCharsets.UTF_8);
+                try {
+                    action.accept(storageKey, readPlayerFile(file));
+                } catch (IOException e) {
+                    ReservedSlotsMod.LOGGER.error("Failed to read reserved slot data from {}", file, e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean keyedByUuid() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+        // Nothing held open
+    }
+
+    private void writePlayerFile(String storageKey, StoredLayout data) throws IOException {
+        Files.createDirectories(directory);
+        Path target = playerFile(storageKey);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            CompactLayoutCodec.write(data, out);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path playerFile(String storageKey) {
+        // Player names are already file-safe; encoding only matters for unusual storage keys
+        return directory.resolve(URLEncoder.encode(storageKey, StandardCharsets.UTF_8) + PLAYER_FILE_SUFFIX);
+    }
+
+    /**
+     * Decodes a player file, accepting both the compact format and legacy gzip NBT.
+     */
+    private static StoredLayout readPlayerFile(Path file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        if (CompactLayoutCodec.isCompact(bytes)) {
+            return CompactLayoutCodec.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+        }
+        return LegacyLayoutNbt.read(NbtIo.readCompressed(file, NbtAccounter.unlimitedHeap()));
+    }
+}
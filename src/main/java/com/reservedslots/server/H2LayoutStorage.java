@@ -0,0 +1,183 @@
+package com.reservedslots.server;
+
+import com.reservedslots.ReservedSlotsMod;
+import com.reservedslots.common.CompactLayoutCodec;
+import com.reservedslots.common.StoredLayout;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.BiConsumer;
+
+/**
+ * Embedded H2 backend: a single local database file ({@code <world>/reservedslots/layouts.mv.db})
+ * with one indexed row per player, keyed by UUID. Rows hold the CompactLayoutCodec
+ * encoding, and each write-behind batch is one transaction.
+ *
+ * When the database is first created, existing per-player files are imported under
+ * their name keys; ReservedSlotsPersistentState moves a player to their UUID key the
+ * first time they join. The import is recorded in a metadata table, so it never runs
+ * again even if every row is later deleted.
+ */
+public final class H2LayoutStorage implements LayoutStorage {
+    private static final String DATABASE_NAME = "layouts";
+    private static final String FILES_IMPORTED = "files_imported";
+
+    // One connection, used under this object's lock
+    private final Connection connection;
+
+    public H2LayoutStorage(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        try {
+            // Connect through the driver directly; DriverManager doesn't see mod-bundled drivers
+            String url = "jdbc:h2:file:" + directory.resolve(DATABASE_NAME).toAbsolutePath() + ";DB_CLOSE_ON_EXIT=FALSE";
+            this.connection = new org.h2.Driver().connect(url, new Properties());
+            boolean imported;
+            boolean empty;
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE IF NOT EXISTS layouts ("
+                    + "player_key VARCHAR(255) PRIMARY KEY, data VARBINARY NOT NULL)");
+                statement.execute("CREATE TABLE IF NOT EXISTS metadata ("
+                    + "entry VARCHAR(64) PRIMARY KEY, val VARCHAR(255) NOT NULL)");
+                try (ResultSet rows = statement.executeQuery("SELECT 1 FROM metadata WHERE entry = '" + FILES_IMPORTED + "'")) {
+                    imported = rows.next();
+                }
+                try (ResultSet rows = statement.executeQuery("SELECT COUNT(*) FROM layouts")) {
+                    empty = rows.next() && rows.getLong(1) == 0;
+                }
+            }
+            if (!imported) {
+                // Databases from before the marker existed already hold their import
+                if (empty) {
+                    importFiles(new FileLayoutStorage(directory));
+                }
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("MERGE INTO metadata (entry, val) KEY (entry) VALUES ('" + FILES_IMPORTED + "', 'true')");
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to open reserved slot database in " + directory, e);
+        }
+    }
+
+    private void importFiles(FileLayoutStorage files) throws IOException {
+        Map<String, StoredLayout> batch = new HashMap<>();
+        files.forEach(batch::put);
+        if (!batch.isEmpty()) {
+            saveBatch(batch);
+            ReservedSlotsMod.LOGGER.info("Imported reserved slot data for {} players into the database", batch.size());
+        }
+    }
+
+    @Override
+    public synchronized StoredLayout load(String storageKey) throws IOException {
+        try (PreparedStatement select = connection.prepareStatement("SELECT data FROM layouts WHERE player_key = ?")) {
+            select.setString(1, storageKey);
+            try (ResultSet rows = select.executeQuery()) {
+                return rows.next() ? decode(rows.getBytes(1)) : null;
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to load reserved slot data for " + storageKey, e);
+        }
+    }
+
+    @Override
+    public synchronized void saveBatch(Map<String, StoredLayout> batch) throws IOException {
+        try (PreparedStatement merge = connection.prepareStatement("MERGE INTO layouts (player_key, data) KEY (player_key) VALUES (?, ?)");
+             PreparedStatement delete = connection.prepareStatement("DELETE FROM layouts WHERE player_key = ?")) {
+            connection.setAutoCommit(false);
+            for (Map.Entry<String, StoredLayout> entry : batch.entrySet()) {
+                if (entry.getValue() == null) {
+                    delete.setString(1, entry.getKey());
+                    delete.addBatch();
+                } else {
+                    merge.setString(1, entry.getKey());
+                    merge.setBytes(2, encode(entry.getValue()));
+                    merge.addBatch();
+                }
+            }
+            merge.executeBatch();
+            delete.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            rollback();
+            throw new IOException("Failed to save reserved slot data for " + batch.size() + " players", e);
+        } finally {
+            restoreAutoCommit();
+        }
+    }
+
+    @Override
+    public synchronized void delete(String storageKey) throws IOException {
+        try (PreparedStatement delete = connection.prepareStatement("DELETE FROM layouts WHERE player_key = ?")) {
+            delete.setString(1, storageKey);
+            delete.executeUpdate();
+        } catch (SQLException e) {
+            throw new IOException("Failed to delete reserved slot data for " + storageKey, e);
+        }
+    }
+
+    @Override
+    public synchronized void forEach(BiConsumer<String, StoredLayout> action) throws IOException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT player_key, data FROM layouts")) {
+            while (rows.next()) {
+                action.accept(rows.getString(1), decode(rows.getBytes(2)));
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to read reserved slot database", e);
+        }
+    }
+
+    @Override
+    public boolean keyedByUuid() {
+        return true;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            ReservedSlotsMod.LOGGER.warn("Failed to close reserved slot database", e);
+        }
+    }
+
+    private void rollback() {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            ReservedSlotsMod.LOGGER.warn("Failed to roll back reserved slot database", e);
+        }
+    }
+
+    private void restoreAutoCommit() {
+        try {
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            ReservedSlotsMod.LOGGER.warn("Failed to reset reserved slot database connection", e);
+        }
+    }
+
+    private static byte[] encode(StoredLayout layout) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        CompactLayoutCodec.write(layout, new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static StoredLayout decode(byte[] data) throws IOException {
+        return CompactLayoutCodec.read(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+}
@@ -0,0 +1,117 @@
+package com.reservedslots.server;
+
+import com.mojang.authlib.GameProfile;
+import com.reservedslots.ReservedSlotsMod;
+import com.reservedslots.common.StoredLayout;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Loads a joining player's layout off the server thread.
+ *
+ * The read starts as soon as the configuration phase knows who is connecting, and by
+ * the time the player joins it has normally finished, so installing the layout is just
+ * decoding a few dozen bytes. If it hasn't, the layout is installed on the server thread
+ * once it arrives. Until then the player counts as loading: their toggles are ignored
+ * and their (empty) in-memory layout is never saved over the stored one.
+ *
+ * All methods run on the server thread.
+ */
+public final class LayoutPrefetch {
+    private static final Map<UUID, CompletableFuture<StoredLayout>> pending = new HashMap<>();
+    private static final Set<UUID> loading = new HashSet<>();
+
+    private LayoutPrefetch() {
+    }
+
+    /**
+     * Starts reading a connecting player's layout.
+     */
+    public static void start(MinecraftServer server, GameProfile profile) {
+        pending.put(profile.id(), prefetch(server, profile));
+    }
+
+    /**
+     * Drops a prefetch for a player who disconnected before joining.
+     */
+    public static void cancel(UUID playerId) {
+        CompletableFuture<StoredLayout> future = pending.remove(playerId);
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * Installs the player's layout and syncs it, now if the read has finished, otherwise
+     * as soon as it does.
+     */
+    public static void install(MinecraftServer server, ServerPlayer player) {
+        UUID playerId = player.getUUID();
+        CompletableFuture<StoredLayout> future = pending.remove(playerId);
+        if (future == null) {
+            // No configuration phase seen for this player (shouldn't happen); read it now, still off-thread
+            future = prefetch(server, player.getGameProfile());
+        }
+
+        if (future.isDone() && !future.isCompletedExceptionally()) {
+            apply(player, future.join());
+            return;
+        }
+
+        loading.add(playerId);
+        future.whenCompleteAsync((stored, error) -> {
+            if (player.hasDisconnected() || !loading.remove(playerId)) {
+                return;
+            }
+            if (error != null) {
+                ReservedSlotsMod.LOGGER.error("Failed to load reserved slot data for {}", player.getName().getString(), error);
+                stored = null;
+            }
+            apply(player, stored);
+        }, server);
+    }
+
+    /**
+     * Whether the player's layout is still being read, so their in-memory layout is not
+     * authoritative yet.
+     */
+    public static boolean isLoading(UUID playerId) {
+        return loading.contains(playerId);
+    }
+
+    /**
+     * Forgets a player who left, whether or not their layout arrived.
+     */
+    public static void clear(UUID playerId) {
+        cancel(playerId);
+        loading.remove(playerId);
+    }
+
+    public static void clearAll() {
+        pending.values().forEach(future -> future.cancel(false));
+        pending.clear();
+        loading.clear();
+    }
+
+    private static CompletableFuture<StoredLayout> prefetch(MinecraftServer server, GameProfile profile) {
+        return ReservedSlotsPersistentState.get(server).prefetchPlayerData(
+            ReservedSlotsPersistentState.storageKey(server, profile),
+            ReservedSlotsPersistentState.legacyStorageKey(server, profile));
+    }
+
+    private static void apply(ServerPlayer player, StoredLayout stored) {
+        if (stored != null) {
+            ReservedSlotManager.loadPlayerData(player, stored);
+        } else {
+            ReservedSlotsMod.LOGGER.info("No saved data found for player {}", player.getName().getString());
+        }
+        ReservedSlotManager.syncToPlayer(player);
+    }
+}
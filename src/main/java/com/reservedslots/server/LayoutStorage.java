@@ -0,0 +1,42 @@
+package com.reservedslots.server;
+
+import com.reservedslots.common.StoredLayout;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Backend that stores player layouts by storage key. ReservedSlotsPersistentState puts
+ * its cache, write-behind batching and journal in front of it, so implementations only
+ * need plain blocking operations. Calls may come from several threads.
+ *
+ * Selected by {@code storageBackend} in the config: FileLayoutStorage (default) or
+ * H2LayoutStorage.
+ */
+public interface LayoutStorage extends AutoCloseable {
+    /**
+     * Loads one player's layout, or null if none is stored.
+     */
+    StoredLayout load(String storageKey) throws IOException;
+
+    /**
+     * Stores a batch of changes; a null layout deletes that player.
+     */
+    void saveBatch(Map<String, StoredLayout> batch) throws IOException;
+
+    void delete(String storageKey) throws IOException;
+
+    /**
+     * Visits every stored layout, for migrations and maintenance.
+     */
+    void forEach(BiConsumer<String, StoredLayout> action) throws IOException;
+
+    /**
+     * Whether this backend identifies players by UUID rather than by name.
+     */
+    boolean keyedByUuid();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,56 @@
+package com.reservedslots.server;
+
+import com.reservedslots.common.PlayerSlotLayout;
+import com.reservedslots.common.SlotState;
+import com.reservedslots.common.StoredLayout;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+
+/**
+ * Reads the original NBT layout format into a StoredLayout:
+ * {@code {ReservedSlots: [{index: int, data: {state: "RESERVED", item: "minecraft:stone"}}]}}.
+ */
+final class LegacyLayoutNbt {
+    static final String NBT_KEY = "ReservedSlots";
+
+    private LegacyLayoutNbt() {
+    }
+
+    static StoredLayout read(CompoundTag nbt) {
+        byte[] states = new byte[PlayerSlotLayout.SIZE];
+        String[] itemIds = new String[PlayerSlotLayout.SIZE];
+
+        var listOpt = nbt.getList(NBT_KEY);
+        if (listOpt.isEmpty()) {
+            return StoredLayout.EMPTY;
+        }
+
+        ListTag list = listOpt.get();
+        for (int i = 0; i < list.size(); i++) {
+            var slotNbtOpt = list.getCompound(i);
+            if (slotNbtOpt.isEmpty()) continue;
+
+            CompoundTag slotNbt = slotNbtOpt.get();
+            int index = slotNbt.getInt("index").orElse(-1);
+            var dataNbtOpt = slotNbt.getCompound("data");
+            if (!PlayerSlotLayout.isValidSlot(index) || dataNbtOpt.isEmpty()) continue;
+
+            CompoundTag dataNbt = dataNbtOpt.get();
+            SlotState state = parseState(dataNbt.getString("state").orElse(""));
+            if (state == null || state == SlotState.NORMAL) continue;
+
+            states[index] = (byte) state.ordinal();
+            itemIds[index] = dataNbt.getString("item").orElse(null);
+        }
+        return StoredLayout.of(states, itemIds);
+    }
+
+    private static SlotState parseState(String name) {
+        for (SlotState state : SlotState.values()) {
+            if (state.name().equals(name)) {
+                return state;
+            }
+        }
+        return null;
+    }
+}
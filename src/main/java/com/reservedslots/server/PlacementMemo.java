@@ -0,0 +1,60 @@
+package com.reservedslots.server;
+
+import net.minecraft.world.item.ItemStack;
+
+import java.util.Arrays;
+
+/**
+ * Small per-player cache of findBestSlotForItem results, keyed by item and components.
+ *
+ * A player standing in an item stream with a full inventory asks the same question
+ * every tick for every nearby item entity. All entries are dropped as soon as the
+ * inventory change counter, the occupancy masks or the slot layout change. The masks
+ * follow in-place count changes too (ItemStackMixin), so a cached -1 is trusted as is.
+ */
+final class PlacementMemo {
+    static final int MISS = Integer.MIN_VALUE;
+
+    private static final int SIZE = 8; // direct-mapped, power of two
+
+    private final ItemStack[] keys = new ItemStack[SIZE]; // single-item copies
+    private final int[] hashes = new int[SIZE];
+    private final int[] results = new int[SIZE];
+
+    private int timesChanged;
+    private int occupancyVersion;
+    private int layoutVersion;
+
+    /**
+     * Drops every entry if any of the inputs changed since the last call.
+     */
+    void validate(int timesChanged, int occupancyVersion, int layoutVersion) {
+        if (timesChanged != this.timesChanged
+                || occupancyVersion != this.occupancyVersion
+                || layoutVersion != this.layoutVersion) {
+            Arrays.fill(keys, null);
+            this.timesChanged = timesChanged;
+            this.occupancyVersion = occupancyVersion;
+            this.layoutVersion = layoutVersion;
+        }
+    }
+
+    /**
+     * Returns the cached slot (or -1 for "no room"), or MISS.
+     */
+    int get(ItemStack stack, int hash) {
+        int bucket = hash & (SIZE - 1);
+        ItemStack key = keys[bucket];
+        if (key != null && hashes[bucket] == hash && ItemStack.isSameItemSameComponents(key, stack)) {
+            return results[bucket];
+        }
+        return MISS;
+    }
+
+    void put(ItemStack stack, int hash, int result) {
+        int bucket = hash & (SIZE - 1);
+        keys[bucket] = stack.copyWithCount(1);
+        hashes[bucket] = hash;
+        results[bucket] = result;
+    }
+}
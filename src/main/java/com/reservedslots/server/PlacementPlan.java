@@ -0,0 +1,45 @@
+package com.reservedslots.server;
+
+import com.reservedslots.common.PlayerSlotLayout;
+
+/**
+ * Reusable list of (slot, count) pairs describing how a stack should be spread
+ * over the player inventory, in the order the slots should be filled.
+ */
+final class PlacementPlan {
+    private final int[] slots = new int[PlayerSlotLayout.SIZE];
+    private final int[] counts = new int[PlayerSlotLayout.SIZE];
+    private int size;
+    private int total;
+
+    void clear() {
+        size = 0;
+        total = 0;
+    }
+
+    void add(int slot, int count) {
+        slots[size] = slot;
+        counts[size] = count;
+        size++;
+        total += count;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int slot(int entry) {
+        return slots[entry];
+    }
+
+    int count(int entry) {
+        return counts[entry];
+    }
+
+    /**
+     * Total number of items the plan places.
+     */
+    int total() {
+        return total;
+    }
+}
@@ -1,13 +1,22 @@
 package com.reservedslots.server;
 
 import com.reservedslots.ReservedSlotsMod;
+import com.reservedslots.common.InventoryOccupancy;
+import com.reservedslots.common.InventoryOccupancyAccessor;
+import com.reservedslots.common.PlayerSlotLayout;
 import com.reservedslots.common.ReservedSlotData;
 import com.reservedslots.common.SlotState;
-import com.reservedslots.network.ReservedSlotPackets;
+import com.reservedslots.common.StoredLayout;
+import com.reservedslots.network.LayoutHandshake;
+import com.reservedslots.network.SlotSyncOutbox;
+import net.minecraft.world.entity.player.Inventory;
 import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.inventory.Slot;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.Identifier;
+import net.minecraft.world.item.Item;
 import net.minecraft.world.item.ItemStack;
-import net.minecraft.nbt.CompoundTag;
-import net.minecraft.nbt.ListTag;
+import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerPlayer;
 
 import java.util.HashMap;
@@ -19,20 +28,33 @@ import java.util.UUID;
  * Handles persistence, synchronization, and slot operations.
  */
 public class ReservedSlotManager {
-    private static final String NBT_KEY = "ReservedSlots";
-    private static final int PLAYER_INVENTORY_SIZE = 41; // 36 inventory + 4 armor + 1 offhand
+    private static final int PLAYER_INVENTORY_SIZE = PlayerSlotLayout.SIZE; // 36 inventory + 4 armor + 1 offhand
 
-    // Per-player slot data (UUID -> slot index -> ReservedSlotData)
+    // Per-player slot layout (UUID -> compact slot table)
     // This is per-world automatically since each world loads from separate player NBT files
-    private static final Map<UUID, Map<Integer, ReservedSlotData>> playerData = new HashMap<>();
+    private static final Map<UUID, PlayerSlotLayout> playerData = new HashMap<>();
+
+    // Per-player memo of recent placement decisions
+    private static final Map<UUID, PlacementMemo> placementMemos = new HashMap<>();
+
+    private static final long ALL_SLOTS_MASK = (1L << PlayerSlotLayout.SIZE) - 1;
+    
+    // Scratch plan for insertAll; the mixins run on both the server and client threads
+    private static final ThreadLocal<PlacementPlan> PLAN = ThreadLocal.withInitial(PlacementPlan::new);
+    private static final ThreadLocal<int[]> SLOT_LIMITS = ThreadLocal.withInitial(() -> new int[PlayerSlotLayout.SIZE]);
 
     /**
      * Gets the slot data for a specific player and slot index.
+     * Never creates entries: NORMAL slots (and unknown players or slots) return the shared
+     * read-only ReservedSlotData.NORMAL. Other slots return a detached copy; write changes
+     * back with setSlotData.
      */
     public static ReservedSlotData getSlotData(UUID playerId, int slotIndex) {
-        return playerData
-                .computeIfAbsent(playerId, k -> new HashMap<>())
-                .computeIfAbsent(slotIndex, k -> new ReservedSlotData());
+        PlayerSlotLayout layout = playerData.get(playerId);
+        if (layout == null || !PlayerSlotLayout.isValidSlot(slotIndex)) {
+            return ReservedSlotData.NORMAL;
+        }
+        return layout.toSlotData(slotIndex);
     }
     
     /**
@@ -46,38 +68,60 @@ public class ReservedSlotManager {
      * Sets the slot data for a specific player and slot index.
      */
     public static void setSlotData(UUID playerId, int slotIndex, ReservedSlotData data) {
+        if (!PlayerSlotLayout.isValidSlot(slotIndex)) {
+            ReservedSlotsMod.LOGGER.warn("Ignoring slot data for out-of-range slot {}", slotIndex);
+            return;
+        }
         playerData
-                .computeIfAbsent(playerId, k -> new HashMap<>())
-                .put(slotIndex, data);
+                .computeIfAbsent(playerId, k -> new PlayerSlotLayout())
+                .set(slotIndex, data.getState(), data.getReservedItem());
     }
 
     /**
      * Toggles the state of a slot (NORMAL -> RESERVED -> LOCKED -> NORMAL).
      */
     public static void toggleSlot(ServerPlayer player, int slotIndex) {
-        ReservedSlotsMod.LOGGER.info("toggleSlot called for player {} slot {}", player.getName().getString(), slotIndex);
+        ReservedSlotsMod.LOGGER.debug("toggleSlot called for player {} slot {}", player.getName().getString(), slotIndex);
+        
+        if (!PlayerSlotLayout.isValidSlot(slotIndex)) {
+            ReservedSlotsMod.LOGGER.debug("Cannot toggle out-of-range slot {}", slotIndex);
+            return;
+        }
+        
+        if (LayoutPrefetch.isLoading(player.getUUID())) {
+            ReservedSlotsMod.LOGGER.debug("Ignoring toggle while the layout is still loading");
+            return; // Would be overwritten when the stored layout arrives
+        }
         
-        ReservedSlotData slotData = getSlotData(player.getUUID(), slotIndex);
+        ReservedSlotData slotData = getSlotData(player.getUUID(), slotIndex).copy();
         
         ItemStack stack = player.getInventory().getItem(slotIndex);
-        ReservedSlotsMod.LOGGER.info("Current slot state: {}, has item: {}", slotData.getState(), !stack.isEmpty());
+        ReservedSlotsMod.LOGGER.debug("Current slot state: {}, has item: {}", slotData.getState(), !stack.isEmpty());
         
         // Only allow toggling if there's an item in the slot (for NORMAL->RESERVED transition)
         // or if already in RESERVED/LOCKED state
         if (slotData.getState() == SlotState.NORMAL && stack.isEmpty()) {
-            ReservedSlotsMod.LOGGER.info("Cannot reserve empty slot");
+            ReservedSlotsMod.LOGGER.debug("Cannot reserve empty slot");
             return; // Can't reserve an empty slot
         }
         
         slotData.cycleState(stack.getItem());
         setSlotData(player.getUUID(), slotIndex, slotData);
+        updateActiveFlag(player);
         
-        ReservedSlotsMod.LOGGER.info("New slot state: {}", slotData.getState());
+        // Journal the change so it survives a crash before the next save
+        MinecraftServer server = player.level().getServer();
+        Item reservedItem = slotData.getReservedItem();
+        String itemId = reservedItem != null ? BuiltInRegistries.ITEM.getKey(reservedItem).toString() : null;
+        ReservedSlotsPersistentState.get(server).journalSlot(
+            ReservedSlotsPersistentState.storageKey(server, player), slotIndex, slotData.getState().ordinal(), itemId);
         
-        // Sync to client
-        ReservedSlotPackets.sendSyncPacket(player, slotIndex, slotData);
+        ReservedSlotsMod.LOGGER.debug("New slot state: {}", slotData.getState());
         
-        ReservedSlotsMod.LOGGER.info("Player {} toggled slot {} to state {} with item {}", 
+        // Sync to client with this tick's other changes
+        SlotSyncOutbox.markSlot(player, slotIndex);
+        
+        ReservedSlotsMod.LOGGER.debug("Player {} toggled slot {} to state {} with item {}", 
             player.getName().getString(), slotIndex, slotData.getState(), 
             slotData.getReservedItem() != null ? slotData.getReservedItem() : "none");
     }
@@ -94,111 +138,168 @@ public class ReservedSlotManager {
      * 5. Empty reserved slot (if matching)
      * 6. Empty normal slot
      * 7. Empty reserved slot (fallback for non-matching items when no normal slots)
+     *
+     * Resolved in a single pass by SlotPlacementEngine; items without a reservation
+     * skip the locked/reserved phases entirely.
      */
     public static int findBestSlotForItem(Player player, ItemStack stack) {
-        UUID playerId = player.getUUID();
-        Map<Integer, ReservedSlotData> slots = playerData.get(playerId);
-
-        // Phase 1: Try to stack with existing items
-        // Priority: locked (matching) > reserved (matching) > normal
-        
-        // 1a. Stack into locked slots with matching items
-        if (slots != null) {
-            for (int i = 0; i < 41; i++) {
-                ReservedSlotData data = slots.get(i);
-                if (data != null && data.getState() == SlotState.LOCKED && data.matches(stack)) {
-                    ItemStack currentStack = player.getInventory().getItem(i);
-                    if (!currentStack.isEmpty() &&
-                        ItemStack.isSameItemSameComponents(currentStack, stack) &&
-                        currentStack.getCount() < currentStack.getMaxStackSize()) {
-                        return i;
-                    }
-                }
-            }
+        PlayerSlotLayout layout = playerData.get(player.getUUID());
+        InventoryOccupancy occupancy = getOccupancy(player);
+        if (layout == null) {
+            return SlotPlacementEngine.findBestSlot(null, occupancy, player.getInventory(), stack);
         }
         
-        // 1b. Stack into reserved slots with matching items
-        if (slots != null) {
-            for (int i = 0; i < 41; i++) {
-                ReservedSlotData data = slots.get(i);
-                if (data != null && data.getState() == SlotState.RESERVED && data.matches(stack)) {
-                    ItemStack currentStack = player.getInventory().getItem(i);
-                    if (!currentStack.isEmpty() &&
-                        ItemStack.isSameItemSameComponents(currentStack, stack) &&
-                        currentStack.getCount() < currentStack.getMaxStackSize()) {
-                        return i;
-                    }
-                }
-            }
+        PlacementMemo memo = getMemo(player, layout, occupancy);
+        int hash = ItemStack.hashItemAndComponents(stack);
+        int cached = memo.get(stack, hash);
+        // Components edited in place aren't tracked, so re-check positive hits (one slot read)
+        if (cached != PlacementMemo.MISS && (cached < 0 || stillFits(player.getInventory().getItem(cached), stack))) {
+            return cached;
         }
         
-        // 1c. Stack into normal slots
-        for (int i = 0; i < 36; i++) {
-            ReservedSlotData data = slots != null ? slots.get(i) : null;
-            if (data == null || data.getState() == SlotState.NORMAL) {
-                ItemStack currentStack = player.getInventory().getItem(i);
-                if (!currentStack.isEmpty() &&
-                    ItemStack.isSameItemSameComponents(currentStack, stack) &&
-                    currentStack.getCount() < currentStack.getMaxStackSize()) {
-                    return i;
-                }
-            }
+        int slot = SlotPlacementEngine.findBestSlot(layout, occupancy, player.getInventory(), stack);
+        memo.put(stack, hash, slot);
+        return slot;
+    }
+
+    private static boolean stillFits(ItemStack current, ItemStack stack) {
+        return current.isEmpty() || SlotPlacementEngine.canStack(current, stack);
+    }
+
+    /**
+     * Gets the player's placement memo, cleared if anything it depends on has changed.
+     */
+    private static PlacementMemo getMemo(Player player, PlayerSlotLayout layout, InventoryOccupancy occupancy) {
+        PlacementMemo memo = placementMemos.computeIfAbsent(player.getUUID(), k -> new PlacementMemo());
+        memo.validate(player.getInventory().getTimesChanged(), occupancy.version(), layout.version());
+        return memo;
+    }
+
+    /**
+     * Inserts as much of the stack as fits, spreading it over every eligible slot in
+     * findBestSlotForItem priority order. The stack is shrunk by the amount placed.
+     * Returns the number of items placed (0 if the inventory has no room).
+     */
+    public static int insertAll(Player player, ItemStack stack) {
+        if (stack.isEmpty()) {
+            return 0;
         }
+        Inventory inventory = player.getInventory();
+        InventoryOccupancy occupancy = getOccupancy(player);
+        PlayerSlotLayout layout = playerData.get(player.getUUID());
         
-        // Phase 2: Try to find empty slots
-        // Priority: locked (matching) > reserved (matching) > normal > reserved (fallback)
-        
-        // 2a. Empty locked slot for matching item
-        if (slots != null) {
-            for (int i = 0; i < 41; i++) {
-                ReservedSlotData data = slots.get(i);
-                if (data != null && data.getState() == SlotState.LOCKED && data.matches(stack)) {
-                    ItemStack currentStack = player.getInventory().getItem(i);
-                    if (currentStack.isEmpty()) {
-                        return i;
-                    }
-                }
+        // Repeated pickups against a full inventory are answered from the memo
+        PlacementMemo memo = null;
+        int hash = 0;
+        if (layout != null) {
+            memo = getMemo(player, layout, occupancy);
+            hash = ItemStack.hashItemAndComponents(stack);
+            if (memo.get(stack, hash) == -1) {
+                return 0;
             }
         }
         
-        // 2b. Empty reserved slot for matching item
-        if (slots != null) {
-            for (int i = 0; i < 41; i++) {
-                ReservedSlotData data = slots.get(i);
-                if (data != null && data.getState() == SlotState.RESERVED && data.matches(stack)) {
-                    ItemStack currentStack = player.getInventory().getItem(i);
-                    if (currentStack.isEmpty()) {
-                        return i;
-                    }
-                }
+        PlacementPlan plan = PLAN.get();
+        SlotPlacementEngine.plan(layout, occupancy, inventory, stack, ALL_SLOTS_MASK, plan);
+        if (plan.size() == 0) {
+            if (memo != null) {
+                memo.put(stack, hash, -1);
             }
+            return 0;
         }
         
-        // 2c. Empty normal slot
-        for (int i = 0; i < 36; i++) {
-            ReservedSlotData data = slots != null ? slots.get(i) : null;
-            if (data == null || data.getState() == SlotState.NORMAL) {
-                ItemStack currentStack = player.getInventory().getItem(i);
-                if (currentStack.isEmpty()) {
-                    return i;
-                }
+        for (int k = 0; k < plan.size(); k++) {
+            int slot = plan.slot(k);
+            int count = plan.count(k);
+            ItemStack current = inventory.getItem(slot);
+            if (current.isEmpty()) {
+                current = stack.split(count);
+                inventory.setItem(slot, current);
+            } else {
+                current.grow(count);
+                stack.shrink(count);
+                occupancy.update(slot, current);
             }
         }
+        return plan.total();
+    }
+
+    /**
+     * Menu variant of insertAll used for shift-click transfers. Only inventory slots in
+     * {@code allowed} are used, and changes go through the matching menu Slot (indexed by
+     * inventory slot in {@code menuSlots}) so the menu syncs them to the client. Each
+     * Slot's own stack limit is respected, so the rest of the stack moves on to the next
+     * slot instead of stopping at a slot that holds fewer items (armor, offhand).
+     * Returns the number of items placed.
+     */
+    public static int insertIntoMenuSlots(Player player, ItemStack stack, Slot[] menuSlots, long allowed) {
+        if (stack.isEmpty()) {
+            return 0;
+        }
+        int[] slotLimits = SLOT_LIMITS.get();
+        for (long mask = allowed; mask != 0; mask &= mask - 1) {
+            int i = Long.numberOfTrailingZeros(mask);
+            slotLimits[i] = menuSlots[i].getMaxStackSize(stack);
+        }
+        
+        PlacementPlan plan = PLAN.get();
+        SlotPlacementEngine.plan(playerData.get(player.getUUID()), getOccupancy(player), player.getInventory(),
+                stack, allowed, slotLimits, plan);
         
-        // 2d. Empty reserved slot as fallback (non-matching item, no normal slots available)
-        if (slots != null) {
-            for (int i = 0; i < 36; i++) {
-                ReservedSlotData data = slots.get(i);
-                if (data != null && data.getState() == SlotState.RESERVED) {
-                    ItemStack currentStack = player.getInventory().getItem(i);
-                    if (currentStack.isEmpty()) {
-                        return i; // Fallback: use reserved slot for non-matching item
-                    }
-                }
+        for (int k = 0; k < plan.size(); k++) {
+            Slot target = menuSlots[plan.slot(k)];
+            int count = plan.count(k);
+            ItemStack current = target.getItem();
+            if (current.isEmpty()) {
+                target.set(stack.split(count));
+            } else {
+                current.grow(count);
+                stack.shrink(count);
+                target.setChanged();
             }
         }
-        
-        return -1; // No slot available
+        return plan.total();
+    }
+
+    /**
+     * Returns the first empty NORMAL slot in the main inventory, or -1.
+     */
+    public static int findFreeNormalSlot(Player player) {
+        long free = freeNormalMask(player);
+        return free != 0 ? Long.numberOfTrailingZeros(free) : -1;
+    }
+
+    /**
+     * Counts empty NORMAL slots in the main inventory.
+     */
+    public static int countFreeNormalSlots(Player player) {
+        return Long.bitCount(freeNormalMask(player));
+    }
+
+    private static long freeNormalMask(Player player) {
+        PlayerSlotLayout layout = playerData.get(player.getUUID());
+        long free = getOccupancy(player).emptyMask() & SlotPlacementEngine.MAIN_MASK;
+        return layout != null ? free & ~layout.reservedMask() : free;
+    }
+
+    /**
+     * Refreshes the per-inventory flag the mixins use to skip all reserved-slot logic
+     * for players without reservations. Call after anything changes a player's layout
+     * or gives the player a new Inventory (respawn).
+     */
+    public static void updateActiveFlag(Player player) {
+        PlayerSlotLayout layout = playerData.get(player.getUUID());
+        ((InventoryOccupancyAccessor) player.getInventory())
+                .setActiveReservations(layout != null && layout.hasAnyReservation());
+    }
+
+    /**
+     * Gets the up-to-date occupancy masks of a player's inventory.
+     */
+    static InventoryOccupancy getOccupancy(Player player) {
+        return ((InventoryOccupancyAccessor) player.getInventory())
+                .getReservedSlotsOccupancy()
+                .refresh(player.getInventory());
     }
 
     /**
@@ -210,135 +311,136 @@ public class ReservedSlotManager {
      * - LOCKED: ONLY accepts matching items (strict enforcement)
      */
     public static boolean canSlotAcceptItem(Player player, int slotIndex, ItemStack stack) {
-        ReservedSlotData data = getSlotData(player.getUUID(), slotIndex);
+        PlayerSlotLayout layout = playerData.get(player.getUUID());
+        if (layout == null || !PlayerSlotLayout.isValidSlot(slotIndex)) {
+            return true;
+        }
         
-        switch (data.getState()) {
+        // Only a non-matching item in a RESERVED slot needs the inventory-full check
+        boolean overflow = layout.getState(slotIndex) == SlotState.RESERVED
+                && !layout.matches(slotIndex, stack)
+                && SlotPlacementEngine.isFullExcludingReserved(layout, getOccupancy(player));
+        return canSlotAcceptItem(layout, slotIndex, stack, overflow);
+    }
+
+    /**
+     * Same as canSlotAcceptItem, with the inventory-full predicate already computed by the
+     * caller (and only when the slot is RESERVED for another item).
+     */
+    private static boolean canSlotAcceptItem(PlayerSlotLayout layout, int slotIndex, ItemStack stack,
+                                             boolean inventoryFull) {
+        switch (layout.getState(slotIndex)) {
             case NORMAL:
                 return true; // Normal slots accept anything
             case RESERVED:
                 // Reserved slots accept matching items
                 // OR any item if there are no unreserved empty slots available
-                if (data.matches(stack)) {
-                    return true;
-                }
-                // Check if inventory is full (excluding reserved/locked slots)
-                return isInventoryFullExcludingReserved(player);
+                return layout.matches(slotIndex, stack) || inventoryFull;
             case LOCKED:
                 // Locked slots ONLY accept their specific item, no exceptions
-                return data.matches(stack);
+                return layout.matches(slotIndex, stack);
             default:
                 return true;
         }
     }
 
+    /**
+     * Finds the first main inventory slot holding a stack that this item can be added to,
+     * skipping slots that may not accept it. Returns -1 if there is none.
+     * 
+     * Only partially filled slots are visited, and the inventory-full predicate for
+     * reserved slots is evaluated at most once, only when a reserved slot is a candidate.
+     */
+    public static int findSlotWithRemainingSpace(Player player, ItemStack stack) {
+        return SlotPlacementEngine.findStackingSlot(playerData.get(player.getUUID()), getOccupancy(player),
+                player.getInventory(), stack);
+    }
+
     /**
      * Checks if a slot is in NORMAL state (not reserved or locked).
      */
     public static boolean isNormalSlot(Player player, int slotIndex) {
-        ReservedSlotData data = getSlotData(player.getUUID(), slotIndex);
-        return data.getState() == SlotState.NORMAL;
+        PlayerSlotLayout layout = playerData.get(player.getUUID());
+        return layout == null || !PlayerSlotLayout.isValidSlot(slotIndex) || layout.isNormal(slotIndex);
     }
 
     /**
      * Checks if inventory is full (excluding reserved/locked slots).
      */
     public static boolean isInventoryFullExcludingReserved(Player player) {
-        UUID playerId = player.getUUID();
-        Map<Integer, ReservedSlotData> slots = playerData.get(playerId);
-        
-        int availableSlots = 0;
-        for (int i = 0; i < 36; i++) {
-            ItemStack stack = player.getInventory().getItem(i);
-            if (stack.isEmpty()) {
-                // Check if this slot is locked
-                ReservedSlotData data = slots != null ? slots.get(i) : null;
-                if (data == null || data.getState() != SlotState.LOCKED) {
-                    availableSlots++;
-                }
-            }
-        }
-        
-        return availableSlots == 0;
+        return SlotPlacementEngine.isFullExcludingReserved(playerData.get(player.getUUID()), getOccupancy(player));
     }
 
     /**
      * Loads player data from storage.
      */
-    public static void loadPlayerData(ServerPlayer player, CompoundTag nbt) {
+    public static void loadPlayerData(ServerPlayer player, StoredLayout stored) {
         UUID playerId = player.getUUID();
         
         // Always clear existing data first to ensure we start fresh for this world
         playerData.remove(playerId);
+        updateActiveFlag(player);
         
-        // Get the NBT list from the compound
-        var listOpt = nbt.getList(NBT_KEY);
-        if (listOpt.isEmpty()) {
+        if (stored.isEmpty()) {
             ReservedSlotsMod.LOGGER.info("No reserved slots found for player {} (new world or no saved data)", 
                 player.getName().getString());
             return;
         }
         
-        ListTag list = listOpt.get();
-        Map<Integer, ReservedSlotData> slots = new HashMap<>();
-        
-        for (int i = 0; i < list.size(); i++) {
-            var slotNbtOpt = list.getCompound(i);
-            if (slotNbtOpt.isEmpty()) continue;
-            
-            CompoundTag slotNbt = slotNbtOpt.get();
-            var indexOpt = slotNbt.getInt("index");
-            if (indexOpt.isEmpty()) continue;
-            
-            int index = indexOpt.get();
-            if (index >= 0) {
-                var dataNbtOpt = slotNbt.getCompound("data");
-                if (dataNbtOpt.isEmpty()) continue;
-                
-                CompoundTag dataNbt = dataNbtOpt.get();
-                ReservedSlotData data = ReservedSlotData.fromNbt(dataNbt);
-                slots.put(index, data);
-            }
+        PlayerSlotLayout layout = new PlayerSlotLayout();
+        for (long mask = stored.reservedMask(); mask != 0; mask &= mask - 1) {
+            int index = Long.numberOfTrailingZeros(mask);
+            layout.set(index, SlotState.values()[stored.state(index)], resolveItem(stored.itemId(index)));
         }
         
-        playerData.put(playerId, slots);
+        playerData.put(playerId, layout);
+        updateActiveFlag(player);
         ReservedSlotsMod.LOGGER.info("Loaded {} reserved slots for player {}", 
-            slots.size(), player.getName().getString());
+            layout.reservedCount(), player.getName().getString());
         
         // Note: Don't sync here - player's network handler isn't ready yet
         // Sync will happen in ServerPlayConnectionEvents.JOIN
     }
 
+    private static Item resolveItem(String itemId) {
+        if (itemId == null) {
+            return null;
+        }
+        Identifier id = Identifier.tryParse(itemId);
+        return id != null ? BuiltInRegistries.ITEM.getValue(id) : null;
+    }
+
     /**
-     * Saves player data to storage.
+     * Takes an immutable snapshot of a player's layout for persistence.
      */
-    public static void savePlayerData(ServerPlayer player, CompoundTag nbt) {
-        Map<Integer, ReservedSlotData> slots = playerData.get(player.getUUID());
+    public static StoredLayout snapshotPlayerData(ServerPlayer player) {
+        PlayerSlotLayout layout = playerData.get(player.getUUID());
         
-        if (slots == null || slots.isEmpty()) {
-            return;
+        if (layout == null || !layout.hasAnyReservation()) {
+            return StoredLayout.EMPTY;
         }
         
-        ListTag list = new ListTag();
+        byte[] states = new byte[PlayerSlotLayout.SIZE];
+        String[] itemIds = new String[PlayerSlotLayout.SIZE];
         
-        for (Map.Entry<Integer, ReservedSlotData> entry : slots.entrySet()) {
-            // Only save non-normal slots
-            if (entry.getValue().getState() != SlotState.NORMAL) {
-                CompoundTag slotNbt = new CompoundTag();
-                slotNbt.putInt("index", entry.getKey());
-                slotNbt.put("data", entry.getValue().toNbt());
-                list.add(slotNbt);
+        // Only non-normal slots carry anything
+        for (long mask = layout.reservedMask(); mask != 0; mask &= mask - 1) {
+            int index = Long.numberOfTrailingZeros(mask);
+            states[index] = (byte) layout.getState(index).ordinal();
+            Item item = layout.getItem(index);
+            if (item != null) {
+                itemIds[index] = BuiltInRegistries.ITEM.getKey(item).toString();
             }
         }
-        
-        // Save the list to the NBT compound
-        nbt.put(NBT_KEY, list);
+        return StoredLayout.of(states, itemIds);
     }
 
     /**
-     * Clears all data for a player (when they disconnect).
+     * Clears all data for a player (when they disconnect, after it has been persisted).
      */
     public static void clearPlayerData(UUID playerId) {
         playerData.remove(playerId);
+        placementMemos.remove(playerId);
     }
     
     /**
@@ -346,6 +448,7 @@ public class ReservedSlotManager {
      */
     public static void clearAllPlayerData() {
         playerData.clear();
+        placementMemos.clear();
         ReservedSlotsMod.LOGGER.info("Cleared all reserved slot data from server memory");
     }
 
@@ -353,19 +456,25 @@ public class ReservedSlotManager {
      * Gets all slot data for a player (for syncing).
      */
     public static Map<Integer, ReservedSlotData> getAllSlotData(UUID playerId) {
-        return playerData.getOrDefault(playerId, new HashMap<>());
+        Map<Integer, ReservedSlotData> slots = new HashMap<>();
+        PlayerSlotLayout layout = playerData.get(playerId);
+        if (layout != null) {
+            for (long mask = layout.reservedMask(); mask != 0; mask &= mask - 1) {
+                int index = Long.numberOfTrailingZeros(mask);
+                slots.put(index, layout.toSlotData(index));
+            }
+        }
+        return slots;
     }
 
     /**
-     * Syncs all reserved slots to a player after they join.
+     * Syncs all reserved slots to a player after they join, unless the handshake shows
+     * their client already has them cached.
      */
     public static void syncToPlayer(ServerPlayer player) {
-        Map<Integer, ReservedSlotData> slots = playerData.get(player.getUUID());
-        if (slots == null) {
-            slots = new HashMap<>();
-        }
+        PlayerSlotLayout layout = playerData.get(player.getUUID());
         ReservedSlotsMod.LOGGER.info("Syncing {} reserved slots to player {}", 
-            slots.size(), player.getName().getString());
-        ReservedSlotPackets.sendFullSyncPacket(player, slots);
+            layout != null ? layout.reservedCount() : 0, player.getName().getString());
+        LayoutHandshake.layoutReady(player);
     }
 }
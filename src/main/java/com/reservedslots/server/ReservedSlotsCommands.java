@@ -0,0 +1,51 @@
+package com.reservedslots.server;
+
+import com.mojang.brigadier.context.CommandContext;
+import com.reservedslots.network.LayoutHandshake;
+import com.reservedslots.network.SlotSyncOutbox;
+import com.reservedslots.network.ToggleThrottle;
+import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.network.chat.Component;
+
+/**
+ * Admin commands: {@code /reservedslots stats} reports the storage cache, sync traffic and toggle counters.
+ */
+public final class ReservedSlotsCommands {
+    private ReservedSlotsCommands() {
+    }
+
+    public static void register() {
+        CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) ->
+            dispatcher.register(Commands.literal("reservedslots")
+                .requires(Commands.hasPermission(Commands.LEVEL_GAMEMASTERS))
+                .then(Commands.literal("stats").executes(ReservedSlotsCommands::stats))));
+    }
+
+    private static int stats(CommandContext<CommandSourceStack> context) {
+        CommandSourceStack source = context.getSource();
+        ReservedSlotsPersistentState.CacheStats cache = ReservedSlotsPersistentState.get(source.getServer()).cacheStats();
+        long lookups = cache.hits() + cache.misses();
+        String hitRate = lookups == 0 ? "-" : String.format("%.1f%%", 100.0 * cache.hits() / lookups);
+        source.sendSuccess(() -> Component.literal(String.format(
+            "Layout cache: %d/%d entries, %d hits, %d misses (%s hit rate), %d evictions",
+            cache.size(), cache.capacity(), cache.hits(), cache.misses(), hitRate, cache.evictions())), false);
+
+        SlotSyncOutbox.Stats sync = SlotSyncOutbox.stats();
+        source.sendSuccess(() -> Component.literal(String.format(
+            "Sync: %d slot updates (%d collapsed), %d packets, %d payload bytes",
+            sync.slotUpdates(), sync.collapsedUpdates(), sync.packets(), sync.bytes())), false);
+
+        ToggleThrottle.Stats toggles = ToggleThrottle.stats();
+        source.sendSuccess(() -> Component.literal(String.format(
+            "Toggles: %d accepted (%d coalesced), %d dropped by rate limit, %d invalid",
+            toggles.accepted(), toggles.coalesced(), toggles.dropped(), toggles.invalid())), false);
+
+        LayoutHandshake.Stats joins = LayoutHandshake.stats();
+        source.sendSuccess(() -> Component.literal(String.format(
+            "Join syncs: %d skipped (client cache current), %d full",
+            joins.unchangedReplies(), joins.fullReplies())), false);
+        return 1;
+    }
+}
@@ -1,114 +1,453 @@
 package com.reservedslots.server;
 
+import com.mojang.authlib.GameProfile;
+import com.reservedslots.ReservedSlotsConfig;
 import com.reservedslots.ReservedSlotsMod;
+import com.reservedslots.common.PlayerSlotLayout;
+import com.reservedslots.common.SlotState;
+import com.reservedslots.common.StoredLayout;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.NbtIo;
 import net.minecraft.nbt.NbtAccounter;
 import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.level.storage.LevelResource;
 
-import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.UUID;
 import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /**
  * Handles persistent storage of reserved slot data across server restarts.
+ *
+ * Players are kept in a LayoutStorage backend chosen in the config (one file per player
+ * under {@code <world>/reservedslots/} by default, or an embedded database), read only
+ * when that player is looked up. Records read or written are kept in a bounded
+ * LRU cache (ReservedSlotsConfig.layoutCacheSize()), so memory follows the players who
+ * are actually active rather than everyone who ever joined; cacheStats() reports how
+ * well it is doing. Changes are queued and a background WriteBehindWriter hands just the
+ * changed players to the backend as one batch. clearCache() flushes the last changes and
+ * waits for the write on shutdown.
+ *
+ * Individual toggles are also appended to a SlotJournal as they happen, so a crash
+ * between saves loses nothing: on startup the journal is replayed over the player files.
+ * compactJournal() runs with every world save; it seals the current journal generation,
+ * stages all online players, and the writer deletes the sealed journal once those
+ * files are on disk. If a journal write fails, the next server tick runs a compaction
+ * straight away (see journalFailed()) rather than trusting the journal until then.
+ *
+ * A legacy single-file {@code reservedslots_data.dat} is split into per-player records
+ * the first time the world is opened.
  */
 public class ReservedSlotsPersistentState {
-    private static final String FILE_NAME = "reservedslots_data.dat";
+    private static final String LEGACY_FILE_NAME = "reservedslots_data.dat";
+    private static final String DIRECTORY_NAME = "reservedslots";
     private static final Map<MinecraftServer, ReservedSlotsPersistentState> instances = new WeakHashMap<>();
-    
-    private final Map<String, CompoundTag> playerData = new HashMap<>();
-    private final File saveFile;
+    private static final Executor LOADER = Executors.newVirtualThreadPerTaskExecutor();
+    private static final long MAX_RETRY_DELAY_MS = 60_000;
+
+    // Marks a pending deletion in the dirty map
+    private static final StoredLayout DELETED = StoredLayout.of(new byte[PlayerSlotLayout.SIZE], new String[PlayerSlotLayout.SIZE]);
+
+    /**
+     * Snapshot of the layout cache counters.
+     */
+    public record CacheStats(int size, int capacity, long hits, long misses, long evictions) {
+    }
+
+    // All guarded by this. loaded is an access-ordered LRU cache of records already read or
+    // written (a null value caches "no file"); dirty holds changes the writer thread hasn't
+    // persisted yet and is never evicted.
+    private final int cacheCapacity = ReservedSlotsConfig.layoutCacheSize();
+    private final Map<String, StoredLayout> loaded = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, StoredLayout> eldest) {
+            if (size() > cacheCapacity) {
+                cacheEvictions++;
+                return true;
+            }
+            return false;
+        }
+    };
+    private Map<String, StoredLayout> dirty = new HashMap<>();
+    private long stageCount;
+    private long cacheHits;
+    private long cacheMisses;
+    private long cacheEvictions;
+    // Guarded by this. Newest journal generation whose changes are all staged; deleted
+    // after the next successful write, -1 if none.
+    private int sealedGeneration = -1;
+    // Writer thread only. Consecutive failed writes, for the retry backoff.
+    private int failedWrites;
+    private final Path directory;
+    private final LayoutStorage storage;
+    private final SlotJournal journal;
+    private final WriteBehindWriter writer;
 
     private ReservedSlotsPersistentState(MinecraftServer server) {
         // Get the world save directory - using session to get the correct path
-        this.saveFile = server.getWorldPath(LevelResource.ROOT).resolve(FILE_NAME).toFile();
-        load();
+        Path worldRoot = server.getWorldPath(LevelResource.ROOT);
+        this.directory = worldRoot.resolve(DIRECTORY_NAME);
+        this.storage = openStorage(directory);
+        migrateLegacyFile(worldRoot.resolve(LEGACY_FILE_NAME));
+        int replayed = replayJournal();
+        this.journal = openJournal(replayed + 1);
+        this.writer = new WriteBehindWriter("ReservedSlots-Writer", this::writeDirty);
+        if (replayed >= 0) {
+            sealedGeneration = replayed;
+            save();
+        }
     }
 
     public static ReservedSlotsPersistentState get(MinecraftServer server) {
         return instances.computeIfAbsent(server, ReservedSlotsPersistentState::new);
     }
-    
+
+    /**
+     * Flushes pending writes of every open state, waits for them and forgets the states.
+     */
     public static void clearCache() {
+        for (ReservedSlotsPersistentState state : instances.values()) {
+            state.writer.close();
+            if (state.journal != null) {
+                state.journal.close();
+            }
+            state.storage.close();
+        }
         instances.clear();
     }
 
-    private void load() {
-        ReservedSlotsMod.LOGGER.info("Attempting to load data from: {}", saveFile.getAbsolutePath());
-        
-        if (!saveFile.exists()) {
-            ReservedSlotsMod.LOGGER.info("No saved data found, starting fresh");
+    /**
+     * The key a player's data is stored under: their name, or their UUID for backends
+     * keyed by UUID. Single-player worlds use a constant key, since offline player
+     * names/UUIDs are random.
+     */
+    public static String storageKey(MinecraftServer server, ServerPlayer player) {
+        return storageKey(server, player.getGameProfile());
+    }
+
+    public static String storageKey(MinecraftServer server, GameProfile profile) {
+        if (server.isSingleplayer()) {
+            return "singleplayer";
+        }
+        return get(server).storage.keyedByUuid() ? profile.id().toString() : profile.name();
+    }
+
+    /**
+     * The name-based key a UUID-keyed backend may still hold a player under (imported
+     * from files), or null if there is none.
+     */
+    public static String legacyStorageKey(MinecraftServer server, GameProfile profile) {
+        if (server.isSingleplayer() || !get(server).storage.keyedByUuid()) {
+            return null;
+        }
+        return profile.name();
+    }
+
+    private static LayoutStorage openStorage(Path directory) {
+        if (ReservedSlotsConfig.storageBackend() == ReservedSlotsConfig.StorageBackend.H2) {
+            try {
+                return new H2LayoutStorage(directory);
+            } catch (IOException e) {
+                // Don't silently fall back: the files could be stale compared to the database
+                throw new IllegalStateException("Failed to open the reserved slot database", e);
+            }
+        }
+        return new FileLayoutStorage(directory);
+    }
+
+    /**
+     * Applies journal generations left over from an unclean shutdown on top of the player
+     * files. Returns the newest replayed generation, or -1 if there was no journal.
+     */
+    private int replayJournal() {
+        Map<String, StoredLayout> replayed = new HashMap<>();
+        int newest = SlotJournal.replay(directory, (playerName, slotIndex, state, itemId) -> {
+            if (!PlayerSlotLayout.isValidSlot(slotIndex) || state >= SlotState.values().length) {
+                return;
+            }
+            StoredLayout current = replayed.get(playerName);
+            if (current == null) {
+                current = getPlayerData(playerName);
+                if (current == null) {
+                    current = StoredLayout.EMPTY;
+                }
+            }
+            replayed.put(playerName, current.withSlot(slotIndex, state, itemId));
+        });
+        synchronized (this) {
+            for (Map.Entry<String, StoredLayout> entry : replayed.entrySet()) {
+                stage(entry.getKey(), entry.getValue());
+            }
+        }
+        return newest;
+    }
+
+    private SlotJournal openJournal(int generation) {
+        try {
+            return new SlotJournal(directory, generation);
+        } catch (IOException e) {
+            ReservedSlotsMod.LOGGER.error("Failed to open slot journal, toggles will only be saved with the world", e);
+            return null;
+        }
+    }
+
+    /**
+     * Records a single slot change in the journal. Called on every toggle.
+     */
+    public void journalSlot(String playerName, int slotIndex, int state, String itemId) {
+        if (journal != null) {
+            journal.append(playerName, slotIndex, state, itemId);
+        }
+    }
+
+    /**
+     * Whether the journal failed to record recent toggles. Those are only in memory until
+     * the next compactJournal(), which should then run right away.
+     */
+    public boolean journalFailed() {
+        return journal != null && journal.hasFailed();
+    }
+
+    /**
+     * Folds the journal into the player files: seals the current journal generation,
+     * stages the online players' layouts (offline players were staged on disconnect) and
+     * schedules a write, after which the sealed journal is deleted.
+     */
+    public void compactJournal(Map<String, StoredLayout> onlinePlayers) {
+        int sealed = journal != null ? journal.rotate() : -1;
+        synchronized (this) {
+            for (Map.Entry<String, StoredLayout> entry : onlinePlayers.entrySet()) {
+                stage(entry.getKey(), entry.getValue());
+            }
+            sealedGeneration = Math.max(sealedGeneration, sealed);
+        }
+        save();
+    }
+
+    /**
+     * Splits the old single data file into per-player records. The file is renamed out of
+     * the way first, so once the records are saved the migration can never run again over
+     * newer data; if saving fails it is renamed back to retry on the next start.
+     */
+    private void migrateLegacyFile(Path legacyFile) {
+        if (!Files.exists(legacyFile)) {
+            return;
+        }
+
+        Path migratedFile = legacyFile.resolveSibling(LEGACY_FILE_NAME + ".migrated");
+        try {
+            Files.move(legacyFile, migratedFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            ReservedSlotsMod.LOGGER.error("Failed to migrate reserved slot data, keeping {}", legacyFile, e);
             return;
         }
 
         try {
-            ReservedSlotsMod.LOGGER.info("Reading saved data from file...");
-            CompoundTag nbt = NbtIo.readCompressed(saveFile.toPath(), NbtAccounter.unlimitedHeap());
-            
+            ReservedSlotsMod.LOGGER.info("Migrating reserved slot data from {}", legacyFile.toAbsolutePath());
+            CompoundTag nbt = NbtIo.readCompressed(migratedFile, NbtAccounter.unlimitedHeap());
+
+            Map<String, StoredLayout> migrated = new HashMap<>();
             var playersNbtOpt = nbt.getCompound("players");
-            if (playersNbtOpt.isEmpty()) {
-                return;
-            }
-            
-            CompoundTag playersNbt = playersNbtOpt.get();
-            for (String playerName : playersNbt.keySet()) {
-                var playerNbtOpt = playersNbt.getCompound(playerName);
-                if (playerNbtOpt.isPresent()) {
-                    playerData.put(playerName, playerNbtOpt.get());
+            if (playersNbtOpt.isPresent()) {
+                CompoundTag playersNbt = playersNbtOpt.get();
+                for (String playerName : playersNbt.keySet()) {
+                    var playerNbtOpt = playersNbt.getCompound(playerName);
+                    if (playerNbtOpt.isPresent()) {
+                        StoredLayout layout = LegacyLayoutNbt.read(playerNbtOpt.get());
+                        if (!layout.isEmpty()) {
+                            migrated.put(playerName, layout);
+                        }
+                    }
                 }
             }
-            
-            ReservedSlotsMod.LOGGER.info("Loaded reserved slot data for {} players", playerData.size());
+            storage.saveBatch(migrated);
+            ReservedSlotsMod.LOGGER.info("Migrated reserved slot data for {} players", migrated.size());
         } catch (IOException e) {
-            ReservedSlotsMod.LOGGER.error("Failed to load reserved slot data", e);
+            ReservedSlotsMod.LOGGER.error("Failed to migrate reserved slot data, keeping {}", legacyFile, e);
+            try {
+                Files.move(migratedFile, legacyFile);
+            } catch (IOException moveBack) {
+                ReservedSlotsMod.LOGGER.error("Failed to restore {}; rename {} back to retry the migration",
+                    legacyFile, migratedFile, moveBack);
+            }
         }
     }
 
+    /**
+     * Schedules a background write of all pending changes.
+     */
     public void save() {
+        writer.requestWrite();
+    }
+
+    /**
+     * Runs on the writer thread: takes the pending changes and hands them to the
+     * backend as one batch.
+     */
+    private void writeDirty() {
+        Map<String, StoredLayout> batch;
+        int sealed;
+        synchronized (this) {
+            if (dirty.isEmpty() && sealedGeneration < 0) {
+                return;
+            }
+            batch = dirty;
+            dirty = new HashMap<>();
+            sealed = sealedGeneration;
+            sealedGeneration = -1;
+        }
+
+        Map<String, StoredLayout> changes = new HashMap<>();
+        batch.forEach((playerName, data) -> changes.put(playerName, data == DELETED ? null : data));
         try {
-            ReservedSlotsMod.LOGGER.info("Saving data to: {}", saveFile.getAbsolutePath());
-            
-            CompoundTag nbt = new CompoundTag();
-            CompoundTag playersNbt = new CompoundTag();
-            
-            for (Map.Entry<String, CompoundTag> entry : playerData.entrySet()) {
-                playersNbt.put(entry.getKey(), entry.getValue());
-            }
-            
-            nbt.put("players", playersNbt);
-            
-            // Ensure parent directory exists
-            if (!saveFile.getParentFile().exists()) {
-                saveFile.getParentFile().mkdirs();
-            }
-            
-            NbtIo.writeCompressed(nbt, saveFile.toPath());
-            ReservedSlotsMod.LOGGER.info("Saved reserved slot data for {} players", playerData.size());
+            storage.saveBatch(changes);
+            ReservedSlotsMod.LOGGER.info("Saved reserved slot data for {} players", batch.size());
+            failedWrites = 0;
+            if (sealed >= 0 && journal != null) {
+                journal.deleteUpTo(sealed);
+            }
         } catch (IOException e) {
-            ReservedSlotsMod.LOGGER.error("Failed to save reserved slot data", e);
+            // 1s, 2s, 4s ... up to a minute between attempts while the backend keeps failing
+            long retryMs = Math.min(MAX_RETRY_DELAY_MS, 1000L << Math.min(failedWrites++, 6));
+            ReservedSlotsMod.LOGGER.error("Failed to save reserved slot data for {} players, retrying in {}s",
+                batch.size(), retryMs / 1000, e);
+            // Keep the sealed journal around until the retry succeeds; anything staged
+            // meanwhile is newer and wins
+            synchronized (this) {
+                batch.forEach(dirty::putIfAbsent);
+                sealedGeneration = Math.max(sealedGeneration, sealed);
+            }
+            writer.requestWriteAfter(retryMs);
         }
     }
 
-    public CompoundTag getPlayerData(String playerName) {
-        return playerData.get(playerName);
+    /**
+     * Gets a player's stored data, loading it from the backend on first access. The load
+     * runs without holding the lock, so a slow disk never stalls the server thread behind
+     * a prefetch; safe to call from any thread.
+     */
+    public StoredLayout getPlayerData(String playerName) {
+        while (true) {
+            long stagedBefore;
+            synchronized (this) {
+                StoredLayout pending = dirty.get(playerName);
+                if (pending != null) {
+                    cacheHits++;
+                    return pending == DELETED ? null : pending;
+                }
+                if (loaded.containsKey(playerName)) {
+                    cacheHits++;
+                    return loaded.get(playerName);
+                }
+                cacheMisses++;
+                stagedBefore = stageCount;
+            }
+
+            StoredLayout data = null;
+            try {
+                data = storage.load(playerName);
+            } catch (IOException e) {
+                ReservedSlotsMod.LOGGER.error("Failed to load reserved slot data for {}", playerName, e);
+            }
+
+            synchronized (this) {
+                // Something was staged while we read; it may be newer than the file, so look again
+                if (stageCount == stagedBefore) {
+                    loaded.put(playerName, data);
+                    return data;
+                }
+            }
+        }
     }
 
-    public void setPlayerData(String playerName, CompoundTag data) {
-        if (data == null || data.isEmpty()) {
-            playerData.remove(playerName);
-        } else {
-            playerData.put(playerName, data);
+    /**
+     * Gets a player's stored data, falling back to their legacy key (see legacyStorageKey)
+     * and moving what is found there to the new key.
+     */
+    public StoredLayout getPlayerData(String playerName, String legacyKey) {
+        StoredLayout data = getPlayerData(playerName);
+        if (data != null || legacyKey == null || legacyKey.equals(playerName)) {
+            return data;
+        }
+        StoredLayout legacy = getPlayerData(legacyKey);
+        if (legacy != null) {
+            synchronized (this) {
+                stage(playerName, legacy);
+                stage(legacyKey, null);
+            }
+            save();
+        }
+        return legacy;
+    }
+
+    /**
+     * Reads a player's stored data on a background thread.
+     */
+    public CompletableFuture<StoredLayout> prefetchPlayerData(String playerName, String legacyKey) {
+        return CompletableFuture.supplyAsync(() -> getPlayerData(playerName, legacyKey), LOADER);
+    }
+
+    public synchronized CacheStats cacheStats() {
+        return new CacheStats(loaded.size(), cacheCapacity, cacheHits, cacheMisses, cacheEvictions);
+    }
+
+    public void setPlayerData(String playerName, StoredLayout data) {
+        synchronized (this) {
+            stage(playerName, data);
         }
         save();
     }
 
-    public void removePlayerData(String playerName) {
-        playerData.remove(playerName);
+    /**
+     * Applies many players' data at once and schedules a single write.
+     * Empty layouts remove the player's entry, as in setPlayerData.
+     */
+    public void setAllPlayerData(Map<String, StoredLayout> data) {
+        if (data.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            for (Map.Entry<String, StoredLayout> entry : data.entrySet()) {
+                stage(entry.getKey(), entry.getValue());
+            }
+        }
         save();
     }
+
+    public void removePlayerData(String playerName) {
+        setPlayerData(playerName, null);
+    }
+
+    /**
+     * Queues a change for the writer; data identical to what is stored is skipped so
+     * periodic saves only write players whose layout actually changed. An evicted record
+     * simply isn't known, and is written again.
+     */
+    private void stage(String playerName, StoredLayout data) {
+        stageCount++;
+        boolean known = loaded.containsKey(playerName);
+        StoredLayout current = loaded.get(playerName);
+        if (data == null || data.isEmpty()) {
+            if (known && current == null) {
+                return;
+            }
+            loaded.put(playerName, null);
+            dirty.put(playerName, DELETED);
+        } else {
+            if (data.equals(current)) {
+                return;
+            }
+            loaded.put(playerName, data);
+            dirty.put(playerName, data);
+        }
+    }
 }
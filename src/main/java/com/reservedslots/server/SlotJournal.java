@@ -0,0 +1,329 @@
+package com.reservedslots.server;
+
+import com.reservedslots.ReservedSlotsMod;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only journal of slot changes, so toggles survive a crash without rewriting
+ * player files on every change.
+ *
+ * Each change is a fixed-size SLOT record (key id, slot, state, item id reference).
+ * Storage keys and item identifiers are written once per journal file as KEY/ITEM
+ * records and referenced by small ints. Appends go to an in-memory buffer; a background
+ * WriteBehindWriter writes and fsyncs them in batches.
+ *
+ * Journals are numbered generations. rotate() seals the current file and starts the next;
+ * once the player files contain everything a sealed generation recorded, deleteUpTo()
+ * removes it. On startup, replay() applies whatever generations are left.
+ *
+ * A failed write leaves the current file missing records (possibly ones defining keys
+ * and items) or ending mid-record, so it can't be trusted for replay. hasFailed() then
+ * reports true and further appends are dropped until rotate() starts a fresh generation;
+ * the owner is expected to save every layout in full and retire the broken one.
+ */
+final class SlotJournal {
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+
+    private static final byte KEY = 'K';
+    private static final byte ITEM = 'I';
+    private static final byte SLOT = 'S';
+
+    /**
+     * One replayed slot change.
+     */
+    interface Replay {
+        void apply(String storageKey, int slotIndex, int state, String itemId);
+    }
+
+    private final Path directory;
+    private final WriteBehindWriter syncer;
+    private final Object ioLock = new Object(); // Held while writing to or rotating the file; taken before this
+
+    // Guarded by this
+    private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private DataOutputStream out = new DataOutputStream(buffer);
+    private final Map<String, Integer> keyIds = new HashMap<>();
+    private final Map<String, Integer> itemIds = new HashMap<>();
+    private int generation;
+    private FileChannel channel;
+    // Set when writing the current generation failed; cleared by rotate()
+    private volatile boolean failed;
+
+    SlotJournal(Path directory, int generation) throws IOException {
+        this.directory = directory;
+        this.generation = generation;
+        this.channel = open(generation);
+        this.syncer = new WriteBehindWriter("ReservedSlots-Journal", this::sync);
+    }
+
+    /**
+     * Records the new state of a slot. Cheap; the record reaches disk with the next batch.
+     */
+    void append(String storageKey, int slotIndex, int state, String itemId) {
+        synchronized (this) {
+            if (failed) {
+                return; // Couldn't be replayed anyway; the full save covers it
+            }
+            try {
+                Integer keyId = keyIds.get(storageKey);
+                if (keyId == null) {
+                    keyId = keyIds.size();
+                    keyIds.put(storageKey, keyId);
+                    out.writeByte(KEY);
+                    out.writeInt(keyId);
+                    out.writeUTF(storageKey);
+                }
+                int itemRef = -1;
+                if (itemId != null) {
+                    Integer existing = itemIds.get(itemId);
+                    if (existing == null) {
+                        existing = itemIds.size();
+                        itemIds.put(itemId, existing);
+                        out.writeByte(ITEM);
+                        out.writeInt(existing);
+                        out.writeUTF(itemId);
+                    }
+                    itemRef = existing;
+                }
+                out.writeByte(SLOT);
+                out.writeInt(keyId);
+                out.writeByte(slotIndex);
+                out.writeByte(state);
+                out.writeInt(itemRef);
+            } catch (IOException e) {
+                // Writing to a ByteArrayOutputStream doesn't fail
+                throw new IllegalStateException(e);
+            }
+        }
+        syncer.requestWrite();
+    }
+
+    /**
+     * Whether a write to the current generation failed since the last rotate(). Until the
+     * caller has rotated and saved every layout, recent changes aren't crash-safe.
+     */
+    boolean hasFailed() {
+        return failed;
+    }
+
+    /**
+     * Seals the current generation and starts a new one. Returns the sealed generation,
+     * which must only be deleted once everything it should have recorded is saved.
+     */
+    int rotate() {
+        synchronized (ioLock) {
+            byte[] pending;
+            FileChannel sealed;
+            int sealedGeneration;
+            boolean sealedFailed;
+            synchronized (this) {
+                pending = takeBuffer();
+                sealed = channel;
+                sealedGeneration = generation;
+                sealedFailed = failed;
+                generation++;
+                keyIds.clear();
+                itemIds.clear();
+                // If the file can't be opened, the next sync fails and reports it again
+                failed = false;
+                try {
+                    channel = open(generation);
+                } catch (IOException e) {
+                    ReservedSlotsMod.LOGGER.error("Failed to open slot journal generation {}", generation, e);
+                    channel = null;
+                }
+            }
+            if (!sealedFailed && !writeAndForce(sealed, pending)) {
+                sealedFailed = true;
+            }
+            if (sealedFailed) {
+                ReservedSlotsMod.LOGGER.warn("Slot journal generation {} is incomplete; keeping it until the full save is written",
+                    sealedGeneration);
+            }
+            closeQuietly(sealed);
+            return sealedGeneration;
+        }
+    }
+
+    /**
+     * Deletes journal files up to and including the given generation.
+     */
+    void deleteUpTo(int sealedGeneration) {
+        for (int gen : listGenerations(directory)) {
+            if (gen <= sealedGeneration) {
+                try {
+                    Files.deleteIfExists(file(directory, gen));
+                } catch (IOException e) {
+                    ReservedSlotsMod.LOGGER.warn("Failed to delete slot journal generation {}", gen, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes out anything buffered, fsyncs and stops the background syncer.
+     */
+    void close() {
+        syncer.close();
+        synchronized (ioLock) {
+            sync();
+            synchronized (this) {
+                closeQuietly(channel);
+                channel = null;
+            }
+        }
+    }
+
+    // Runs on the syncer thread
+    private void sync() {
+        synchronized (ioLock) {
+            byte[] pending;
+            FileChannel target;
+            synchronized (this) {
+                pending = takeBuffer();
+                target = channel;
+            }
+            if (!writeAndForce(target, pending)) {
+                failed = true;
+            }
+        }
+    }
+
+    private byte[] takeBuffer() {
+        byte[] bytes = buffer.toByteArray();
+        buffer = new ByteArrayOutputStream();
+        out = new DataOutputStream(buffer);
+        return bytes;
+    }
+
+    /**
+     * Returns false if the bytes may not have reached the disk.
+     */
+    private boolean writeAndForce(FileChannel target, byte[] bytes) {
+        if (bytes.length == 0) {
+            return true;
+        }
+        if (target == null) {
+            return false; // The generation couldn't be opened
+        }
+        try {
+            ByteBuffer data = ByteBuffer.wrap(bytes);
+            while (data.hasRemaining()) {
+                target.write(data);
+            }
+            target.force(false);
+            return true;
+        } catch (IOException e) {
+            ReservedSlotsMod.LOGGER.error("Failed to write slot journal", e);
+            return false;
+        }
+    }
+
+    private FileChannel open(int gen) throws IOException {
+        Files.createDirectories(directory);
+        return FileChannel.open(file(directory, gen),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            ReservedSlotsMod.LOGGER.warn("Failed to close slot journal", e);
+        }
+    }
+
+    private static Path file(Path directory, int gen) {
+        return directory.resolve(PREFIX + gen + SUFFIX);
+    }
+
+    /**
+     * Lists the journal generations present in the directory, oldest first.
+     */
+    private static List<Integer> listGenerations(Path directory) {
+        List<Integer> generations = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return generations;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    generations.add(Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        } catch (IOException e) {
+            ReservedSlotsMod.LOGGER.error("Failed to list slot journals in {}", directory, e);
+        }
+        generations.sort(null);
+        return generations;
+    }
+
+    /**
+     * Replays every journal generation in order and returns the newest generation found,
+     * or -1 if there were none. A torn record at the end of a file (crash mid-append)
+     * ends that file's replay.
+     */
+    static int replay(Path directory, Replay replay) {
+        int newest = -1;
+        for (int gen : listGenerations(directory)) {
+            newest = gen;
+            Map<Integer, String> keys = new HashMap<>();
+            Map<Integer, String> items = new HashMap<>();
+            int records = 0;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file(directory, gen))))) {
+                while (true) {
+                    byte type;
+                    try {
+                        type = in.readByte();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    switch (type) {
+                        case KEY -> keys.put(in.readInt(), in.readUTF());
+                        case ITEM -> items.put(in.readInt(), in.readUTF());
+                        case SLOT -> {
+                            String key = keys.get(in.readInt());
+                            int slot = in.readUnsignedByte();
+                            int state = in.readUnsignedByte();
+                            int itemRef = in.readInt();
+                            if (key != null) {
+                                replay.apply(key, slot, state, itemRef < 0 ? null : items.get(itemRef));
+                                records++;
+                            }
+                        }
+                        default -> throw new IOException("Unknown journal record type " + type);
+                    }
+                }
+            } catch (EOFException e) {
+                ReservedSlotsMod.LOGGER.warn("Slot journal generation {} ends with a partial record", gen);
+            } catch (IOException e) {
+                ReservedSlotsMod.LOGGER.error("Failed to replay slot journal generation {}", gen, e);
+            }
+            ReservedSlotsMod.LOGGER.info("Replayed {} slot changes from journal generation {}", records, gen);
+        }
+        return newest;
+    }
+}
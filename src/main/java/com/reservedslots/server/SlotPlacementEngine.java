@@ -0,0 +1,215 @@
+package com.reservedslots.server;
+
+import com.reservedslots.common.InventoryOccupancy;
+import com.reservedslots.common.PlayerSlotLayout;
+import net.minecraft.world.Container;
+import net.minecraft.world.item.ItemStack;
+
+/**
+ * Chooses inventory slots for incoming items using bitmasks from the player's
+ * slot layout and inventory occupancy, so each slot is read at most once per query.
+ */
+final class SlotPlacementEngine {
+    static final long MAIN_MASK = InventoryOccupancy.MAIN_MASK;
+
+    private SlotPlacementEngine() {
+    }
+
+    /**
+     * Single-pass equivalent of the seven-phase priority search documented on
+     * {@link ReservedSlotManager#findBestSlotForItem}. Stacking candidates come from the
+     * partial-stack mask and empty slots from the empty mask, so only slots that might
+     * actually take the item are read.
+     */
+    static int findBestSlot(PlayerSlotLayout layout, InventoryOccupancy occupancy,
+                            Container inventory, ItemStack stack) {
+        long lockedMatch = 0;
+        long reservedMatch = 0;
+        long fallback = 0;
+        long normal = MAIN_MASK;
+        if (layout != null) {
+            if (!stack.isEmpty()) {
+                lockedMatch = layout.lockedMaskFor(stack.getItem());
+                reservedMatch = layout.reservedMaskFor(stack.getItem());
+            }
+            normal &= ~layout.reservedMask();
+            fallback = layout.reservedMask() & ~layout.lockedMask() & MAIN_MASK;
+        }
+        boolean hasMatch = (lockedMatch | reservedMatch) != 0;
+
+        // Phase 1: stack onto existing partial stacks
+        int stackReserved = -1;
+        int stackNormal = -1;
+        long partial = occupancy.partialMask() & (lockedMatch | reservedMatch | normal);
+        for (long mask = partial; mask != 0; mask &= mask - 1) {
+            int i = Long.numberOfTrailingZeros(mask);
+            long bit = 1L << i;
+            if (!canStack(inventory.getItem(i), stack)) {
+                continue;
+            }
+            if ((lockedMatch & bit) != 0) {
+                return i; // Highest priority, and slots are visited in ascending order
+            } else if ((reservedMatch & bit) != 0) {
+                if (stackReserved < 0) stackReserved = i;
+            } else {
+                if (!hasMatch) return i; // Nothing reserved for this item can outrank it
+                if (stackNormal < 0) stackNormal = i;
+            }
+        }
+        if (stackReserved >= 0) return stackReserved;
+        if (stackNormal >= 0) return stackNormal;
+
+        // Phase 2: empty slots, locked > reserved > normal > reserved fallback
+        long empty = occupancy.emptyMask();
+        int slot = firstEmpty(empty & lockedMatch, inventory);
+        if (slot < 0) slot = firstEmpty(empty & reservedMatch, inventory);
+        if (slot < 0) slot = firstEmpty(empty & normal, inventory);
+        if (slot < 0) slot = firstEmpty(empty & fallback, inventory);
+        return slot;
+    }
+
+    /**
+     * Finds the first main inventory slot holding a stack this item can be added to,
+     * skipping locked slots reserved for other items, and reserved slots for other items
+     * unless the rest of the inventory is full. Returns -1 if there is none.
+     *
+     * Slots that may not take the item are dropped from the partial-stack mask before any
+     * slot is read, and the inventory-full predicate is only evaluated, from the masks,
+     * when a slot reserved for another item is still a candidate. The cost is linear in
+     * partial stacks even with every slot reserved.
+     */
+    static int findStackingSlot(PlayerSlotLayout layout, InventoryOccupancy occupancy,
+                                Container inventory, ItemStack stack) {
+        long candidates = occupancy.partialMask() & MAIN_MASK;
+        if (layout != null) {
+            long matching = stack.isEmpty() ? 0
+                    : layout.lockedMaskFor(stack.getItem()) | layout.reservedMaskFor(stack.getItem());
+            candidates &= ~(layout.lockedMask() & ~matching);
+            long reservedOther = layout.reservedMask() & ~layout.lockedMask() & ~matching;
+            if ((candidates & reservedOther) != 0 && !isFullExcludingReserved(layout, occupancy)) {
+                candidates &= ~reservedOther;
+            }
+        }
+        for (; candidates != 0; candidates &= candidates - 1) {
+            int i = Long.numberOfTrailingZeros(candidates);
+            if (canStack(inventory.getItem(i), stack)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * True when no main inventory slot is both empty and unlocked, which is when reserved
+     * slots start taking items they aren't reserved for.
+     */
+    static boolean isFullExcludingReserved(PlayerSlotLayout layout, InventoryOccupancy occupancy) {
+        long available = occupancy.emptyMask() & MAIN_MASK;
+        if (layout != null) {
+            available &= ~layout.lockedMask();
+        }
+        return available == 0;
+    }
+
+    /**
+     * Plans how to spread the whole stack over the inventory, following the same priority
+     * order as findBestSlot: the result is what repeated findBestSlot calls would produce,
+     * computed in one walk. Only slots in {@code allowed} are considered. The inventory
+     * and the stack are not modified.
+     */
+    static void plan(PlayerSlotLayout layout, InventoryOccupancy occupancy, Container inventory,
+                     ItemStack stack, long allowed, PlacementPlan plan) {
+        plan(layout, occupancy, inventory, stack, allowed, null, plan);
+    }
+
+    /**
+     * Same as plan, with a per-slot stack limit (indexed by inventory slot) on top of the
+     * item's own, for menu slots that hold less than a full stack (armor, offhand).
+     */
+    static void plan(PlayerSlotLayout layout, InventoryOccupancy occupancy, Container inventory,
+                     ItemStack stack, long allowed, int[] slotLimits, PlacementPlan plan) {
+        plan.clear();
+        if (stack.isEmpty()) {
+            return;
+        }
+
+        long lockedMatch = 0;
+        long reservedMatch = 0;
+        long fallback = 0;
+        long normal = MAIN_MASK;
+        if (layout != null) {
+            lockedMatch = layout.lockedMaskFor(stack.getItem());
+            reservedMatch = layout.reservedMaskFor(stack.getItem());
+            normal &= ~layout.reservedMask();
+            fallback = layout.reservedMask() & ~layout.lockedMask() & MAIN_MASK;
+        }
+
+        // Phase 1: top up partial stacks, locked > reserved > normal
+        int remaining = stack.getCount();
+        long partial = occupancy.partialMask() & allowed;
+        remaining = planStacking(partial & lockedMatch, inventory, stack, remaining, slotLimits, plan);
+        remaining = planStacking(partial & reservedMatch, inventory, stack, remaining, slotLimits, plan);
+        remaining = planStacking(partial & normal, inventory, stack, remaining, slotLimits, plan);
+
+        // Phase 2: fill empty slots, locked > reserved > normal > reserved fallback
+        long empty = occupancy.emptyMask() & allowed;
+        remaining = planEmpty(empty & lockedMatch, inventory, stack, remaining, slotLimits, plan);
+        remaining = planEmpty(empty & reservedMatch, inventory, stack, remaining, slotLimits, plan);
+        remaining = planEmpty(empty & normal, inventory, stack, remaining, slotLimits, plan);
+        planEmpty(empty & fallback, inventory, stack, remaining, slotLimits, plan);
+    }
+
+    private static int planStacking(long mask, Container inventory, ItemStack stack, int remaining,
+                                    int[] slotLimits, PlacementPlan plan) {
+        for (; mask != 0 && remaining > 0; mask &= mask - 1) {
+            int i = Long.numberOfTrailingZeros(mask);
+            ItemStack current = inventory.getItem(i);
+            if (canStack(current, stack)) {
+                int count = Math.min(remaining, limit(current, i, slotLimits) - current.getCount());
+                if (count > 0) {
+                    plan.add(i, count);
+                    remaining -= count;
+                }
+            }
+        }
+        return remaining;
+    }
+
+    private static int planEmpty(long mask, Container inventory, ItemStack stack, int remaining,
+                                 int[] slotLimits, PlacementPlan plan) {
+        for (; mask != 0 && remaining > 0; mask &= mask - 1) {
+            int i = Long.numberOfTrailingZeros(mask);
+            if (inventory.getItem(i).isEmpty()) {
+                int count = Math.min(remaining, limit(stack, i, slotLimits));
+                if (count > 0) {
+                    plan.add(i, count);
+                    remaining -= count;
+                }
+            }
+        }
+        return remaining;
+    }
+
+    private static int limit(ItemStack stack, int slot, int[] slotLimits) {
+        return slotLimits != null ? Math.min(stack.getMaxStackSize(), slotLimits[slot]) : stack.getMaxStackSize();
+    }
+
+    /**
+     * Lowest slot in the mask that is really empty; skips slots the masks got wrong.
+     */
+    private static int firstEmpty(long mask, Container inventory) {
+        for (; mask != 0; mask &= mask - 1) {
+            int i = Long.numberOfTrailingZeros(mask);
+            if (inventory.getItem(i).isEmpty()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static boolean canStack(ItemStack current, ItemStack stack) {
+        return !current.isEmpty()
+                && ItemStack.isSameItemSameComponents(current, stack)
+                && current.getCount() < current.getMaxStackSize();
+    }
+}
@@ -0,0 +1,96 @@
+package com.reservedslots.server;
+
+import com.reservedslots.ReservedSlotsMod;
+
+/**
+ * Runs a write task on a single background virtual thread.
+ *
+ * Requests made while a write is pending or in progress are coalesced into one
+ * follow-up write, so a burst of changes costs at most two writes.
+ */
+final class WriteBehindWriter {
+    // Collect further changes for a moment before writing
+    private static final long COALESCE_DELAY_MS = 1000;
+
+    private final Runnable writeTask;
+    private final Thread thread;
+    private boolean pending;
+    private boolean stopping;
+    private long notBefore; // Earliest time for the next write (retry backoff), 0 = none
+
+    WriteBehindWriter(String name, Runnable writeTask) {
+        this.writeTask = writeTask;
+        this.thread = Thread.ofVirtual().name(name).start(this::run);
+    }
+
+    /**
+     * Schedules a write. Returns immediately.
+     */
+    synchronized void requestWrite() {
+        pending = true;
+        notifyAll();
+    }
+
+    /**
+     * Schedules a write no sooner than delayMs from now, for retrying after a failed write.
+     * Requests made meanwhile don't bring it forward; close() still writes straight away.
+     * Ignored once the writer is stopping, so a backend that keeps failing can't hold up
+     * shutdown.
+     */
+    synchronized void requestWriteAfter(long delayMs) {
+        if (stopping) {
+            return;
+        }
+        pending = true;
+        notBefore = Math.max(notBefore, System.currentTimeMillis() + delayMs);
+        notifyAll();
+    }
+
+    /**
+     * Performs any pending write and stops the writer thread, waiting for it to finish.
+     */
+    void close() {
+        synchronized (this) {
+            stopping = true;
+            notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ReservedSlotsMod.LOGGER.warn("Interrupted while waiting for {} to finish", thread.getName());
+        }
+    }
+
+    private void run() {
+        while (true) {
+            synchronized (this) {
+                try {
+                    while (!pending && !stopping) {
+                        wait();
+                    }
+                    if (!pending) {
+                        return; // Stopping with nothing left to write
+                    }
+                    // requestWrite() notifies, so wait out the whole window rather than
+                    // until the next request
+                    long deadline = Math.max(System.currentTimeMillis() + COALESCE_DELAY_MS, notBefore);
+                    long remaining;
+                    while (!stopping && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                        wait(remaining);
+                    }
+                } catch (InterruptedException e) {
+                    // Fall through and write what we have
+                }
+                pending = false;
+                notBefore = 0;
+            }
+
+            try {
+                writeTask.run();
+            } catch (RuntimeException e) {
+                ReservedSlotsMod.LOGGER.error("Background write failed in {}", thread.getName(), e);
+            }
+        }
+    }
+}
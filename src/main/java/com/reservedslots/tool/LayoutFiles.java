@@ -0,0 +1,318 @@
+package com.reservedslots.tool;
+
+import com.reservedslots.common.CompactLayoutCodec;
+import com.reservedslots.common.SlotState;
+import com.reservedslots.common.StoredLayout;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Reads and writes every on-disk layout format without the game: the legacy single
+ * {@code reservedslots_data.dat}, per-player files in legacy gzip NBT, and per-player
+ * files in CompactLayoutCodec format. Players are streamed one at a time.
+ */
+final class LayoutFiles {
+    static final String LEGACY_FILE_PREFIX = "reservedslots_data";
+    static final String DIRECTORY_NAME = "reservedslots";
+    static final String PLAYER_FILE_SUFFIX = ".dat";
+    private static final String JOURNAL_PREFIX = "journal-";
+    private static final String NBT_KEY = "ReservedSlots";
+
+    enum Format { COMPACT, NBT }
+
+    interface Sink {
+        void accept(String storageKey, StoredLayout layout, Format format);
+    }
+
+    /**
+     * Problems found while reading; the readers repair what they can and count the rest.
+     */
+    static final class Report {
+        int unreadableFiles;
+        int invalidEntries;
+        int duplicateSlots;
+        int journalFiles;
+
+        boolean hasProblems() {
+            return unreadableFiles + invalidEntries + duplicateSlots > 0;
+        }
+    }
+
+    private LayoutFiles() {
+    }
+
+    /**
+     * Streams every player layout found at the input, which may be a world directory,
+     * a {@code reservedslots} directory, the legacy data file or a single player file.
+     */
+    static void read(Path input, Sink sink, Report report) throws IOException {
+        if (!Files.isDirectory(input)) {
+            readFile(input, sink, report);
+            return;
+        }
+
+        // Only a reservedslots directory holds player files; a world root also holds
+        // level.dat and other .dat files that aren't layouts
+        if (input.getFileName() != null && input.getFileName().toString().equals(DIRECTORY_NAME)) {
+            readDirectory(input, sink, report);
+            return;
+        }
+        Path shardDirectory = input.resolve(DIRECTORY_NAME);
+        if (Files.isDirectory(shardDirectory)) {
+            readDirectory(shardDirectory, sink, report);
+        }
+
+        // An unmigrated legacy file takes precedence, as it does when the server migrates it
+        Path legacy = input.resolve(LEGACY_FILE_PREFIX + ".dat");
+        if (Files.isRegularFile(legacy)) {
+            readLegacyFile(legacy, sink, report);
+        }
+    }
+
+    private static void readDirectory(Path directory, Sink sink, Report report) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(JOURNAL_PREFIX)) {
+                    report.journalFiles++;
+                } else if (name.endsWith(PLAYER_FILE_SUFFIX) && !name.startsWith(LEGACY_FILE_PREFIX)) {
+                    files.add(file);
+                }
+            }
+        }
+        files.sort(null);
+        for (Path file : files) {
+            readFile(file, sink, report);
+        }
+    }
+
+    private static void readFile(Path file, Sink sink, Report report) throws IOException {
+        String name = file.getFileName().toString();
+        if (name.startsWith(LEGACY_FILE_PREFIX)) {
+            readLegacyFile(file, sink, report);
+            return;
+        }
+
+        String storageKey = URLDecoder.decode(
+            name.endsWith(PLAYER_FILE_SUFFIX) ? name.substring(0, name.length() - PLAYER_FILE_SUFFIX.length()) : name,
+            StandardCharsets.UTF_8);
+        StoredLayout layout;
+        Format format;
+        try {
+            if (isCompact(file)) {
+                format = Format.COMPACT;
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                    layout = CompactLayoutCodec.read(in);
+                }
+            } else {
+                format = Format.NBT;
+                try (NbtInput nbt = NbtInput.open(file)) {
+                    nbt.readRootCompound();
+                    layout = readPlayer(nbt, report);
+                }
+            }
+        } catch (IOException e) {
+            report.unreadableFiles++;
+            System.err.println("Skipping unreadable file " + file + ": " + e.getMessage());
+            return;
+        }
+        sink.accept(storageKey, layout, format);
+    }
+
+    private static boolean isCompact(Path file) throws IOException {
+        byte[] header = new byte[4];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read = in.readNBytes(header, 0, header.length);
+            return read == header.length && CompactLayoutCodec.isCompact(header);
+        }
+    }
+
+    /**
+     * Streams the legacy single file: {@code {players: {<name>: {ReservedSlots: [...]}}}}.
+     */
+    private static void readLegacyFile(Path file, Sink sink, Report report) throws IOException {
+        try (NbtInput nbt = NbtInput.open(file)) {
+            nbt.readRootCompound();
+            byte type;
+            while ((type = nbt.nextEntry()) != NbtInput.END) {
+                String name = nbt.readName();
+                if (type != NbtInput.COMPOUND || !name.equals("players")) {
+                    nbt.skip(type);
+                    continue;
+                }
+                byte playerType;
+                while ((playerType = nbt.nextEntry()) != NbtInput.END) {
+                    String playerName = nbt.readName();
+                    if (playerType != NbtInput.COMPOUND) {
+                        report.invalidEntries++;
+                        nbt.skip(playerType);
+                        continue;
+                    }
+                    sink.accept(playerName, readPlayer(nbt, report), Format.NBT);
+                }
+            }
+        } catch (IOException e) {
+            report.unreadableFiles++;
+            System.err.println("Failed to read " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the entries of a player compound, positioned just after its header.
+     * Out-of-range or malformed slot entries are dropped; a repeated slot index keeps
+     * the last entry.
+     */
+    private static StoredLayout readPlayer(NbtInput nbt, Report report) throws IOException {
+        byte[] states = new byte[StoredLayout.SIZE];
+        String[] itemIds = new String[StoredLayout.SIZE];
+
+        byte type;
+        while ((type = nbt.nextEntry()) != NbtInput.END) {
+            String name = nbt.readName();
+            if (type != NbtInput.LIST || !name.equals(NBT_KEY)) {
+                nbt.skip(type);
+                continue;
+            }
+            byte elementType = nbt.readByte();
+            int length = nbt.readInt();
+            for (int i = 0; i < length; i++) {
+                if (elementType != NbtInput.COMPOUND) {
+                    report.invalidEntries++;
+                    nbt.skip(elementType);
+                } else {
+                    readSlot(nbt, states, itemIds, report);
+                }
+            }
+        }
+        return StoredLayout.of(states, itemIds);
+    }
+
+    private static void readSlot(NbtInput nbt, byte[] states, String[] itemIds, Report report) throws IOException {
+        int index = -1;
+        String stateName = null;
+        String itemId = null;
+
+        byte type;
+        while ((type = nbt.nextEntry()) != NbtInput.END) {
+            String name = nbt.readName();
+            if (type == NbtInput.INT && name.equals("index")) {
+                index = nbt.readInt();
+            } else if (type == NbtInput.COMPOUND && name.equals("data")) {
+                byte dataType;
+                while ((dataType = nbt.nextEntry()) != NbtInput.END) {
+                    String dataName = nbt.readName();
+                    if (dataType == NbtInput.STRING && dataName.equals("state")) {
+                        stateName = nbt.readString();
+                    } else if (dataType == NbtInput.STRING && dataName.equals("item")) {
+                        itemId = nbt.readString();
+                    } else {
+                        nbt.skip(dataType);
+                    }
+                }
+            } else {
+                nbt.skip(type);
+            }
+        }
+
+        SlotState state = parseState(stateName);
+        if (index < 0 || index >= StoredLayout.SIZE || state == null) {
+            report.invalidEntries++;
+            return;
+        }
+        if (state == SlotState.NORMAL) {
+            return;
+        }
+        if (states[index] != 0) {
+            report.duplicateSlots++;
+        }
+        states[index] = (byte) state.ordinal();
+        itemIds[index] = itemId;
+    }
+
+    private static SlotState parseState(String name) {
+        for (SlotState state : SlotState.values()) {
+            if (state.name().equals(name)) {
+                return state;
+            }
+        }
+        return null;
+    }
+
+    static Path playerFile(Path directory, String storageKey) {
+        return directory.resolve(URLEncoder.encode(storageKey, StandardCharsets.UTF_8) + PLAYER_FILE_SUFFIX);
+    }
+
+    /**
+     * Writes one player file in the given format; empty layouts delete the file instead,
+     * matching what the server does.
+     */
+    static void write(Path directory, String storageKey, StoredLayout layout, Format format) throws IOException {
+        Path file = playerFile(directory, storageKey);
+        if (layout.isEmpty()) {
+            Files.deleteIfExists(file);
+            return;
+        }
+        if (format == Format.COMPACT) {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+                CompactLayoutCodec.write(layout, out);
+            }
+        } else {
+            try (OutputStream raw = Files.newOutputStream(file);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(raw)))) {
+                writeNbt(layout, out);
+            }
+        }
+    }
+
+    /**
+     * Writes {@code {ReservedSlots: [{index: int, data: {state: "...", item: "..."}}]}}
+     * as an unnamed root compound, the layout NbtIo produces.
+     */
+    private static void writeNbt(StoredLayout layout, DataOutputStream out) throws IOException {
+        long mask = layout.reservedMask();
+        out.writeByte(NbtInput.COMPOUND);
+        out.writeUTF("");
+
+        out.writeByte(NbtInput.LIST);
+        out.writeUTF(NBT_KEY);
+        out.writeByte(NbtInput.COMPOUND);
+        out.writeInt(Long.bitCount(mask));
+        for (long m = mask; m != 0; m &= m - 1) {
+            int index = Long.numberOfTrailingZeros(m);
+            out.writeByte(NbtInput.INT);
+            out.writeUTF("index");
+            out.writeInt(index);
+
+            out.writeByte(NbtInput.COMPOUND);
+            out.writeUTF("data");
+            out.writeByte(NbtInput.STRING);
+            out.writeUTF("state");
+            out.writeUTF(SlotState.values()[layout.state(index)].name());
+            if (layout.itemId(index) != null) {
+                out.writeByte(NbtInput.STRING);
+                out.writeUTF("item");
+                out.writeUTF(layout.itemId(index));
+            }
+            out.writeByte(NbtInput.END); // data
+            out.writeByte(NbtInput.END); // slot entry
+        }
+
+        out.writeByte(NbtInput.END); // root
+    }
+}
@@ -0,0 +1,120 @@
+package com.reservedslots.tool;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Minimal pull reader for the NBT binary format, for use without the game on the
+ * classpath. Nothing is materialized: callers walk compounds entry by entry and skip
+ * whatever they don't need, so memory use doesn't depend on the file size.
+ */
+final class NbtInput implements AutoCloseable {
+    static final byte END = 0;
+    static final byte INT = 3;
+    static final byte STRING = 8;
+    static final byte LIST = 9;
+    static final byte COMPOUND = 10;
+
+    private final DataInputStream in;
+
+    private NbtInput(InputStream in) {
+        this.in = new DataInputStream(in);
+    }
+
+    /**
+     * Opens a file, transparently decompressing it if it is gzipped.
+     */
+    static NbtInput open(Path file) throws IOException {
+        BufferedInputStream raw = new BufferedInputStream(Files.newInputStream(file), 64 * 1024);
+        raw.mark(2);
+        int b0 = raw.read();
+        int b1 = raw.read();
+        raw.reset();
+        boolean gzip = b0 == 0x1f && b1 == 0x8b;
+        return new NbtInput(gzip ? new BufferedInputStream(new GZIPInputStream(raw, 64 * 1024)) : raw);
+    }
+
+    /**
+     * Reads the root tag header and checks it is a compound.
+     */
+    void readRootCompound() throws IOException {
+        byte type = in.readByte();
+        if (type != COMPOUND) {
+            throw new IOException("Root tag is not a compound (type " + type + ")");
+        }
+        in.readUTF();
+    }
+
+    /**
+     * Reads the type of the next compound entry; END means the compound is finished
+     * and no name follows.
+     */
+    byte nextEntry() throws IOException {
+        return in.readByte();
+    }
+
+    String readName() throws IOException {
+        return in.readUTF();
+    }
+
+    int readInt() throws IOException {
+        return in.readInt();
+    }
+
+    String readString() throws IOException {
+        return in.readUTF();
+    }
+
+    byte readByte() throws IOException {
+        return in.readByte();
+    }
+
+    /**
+     * Skips the payload of a tag of the given type.
+     */
+    void skip(byte type) throws IOException {
+        switch (type) {
+            case END -> { }
+            case 1 -> skipBytes(1);
+            case 2 -> skipBytes(2);
+            case 3, 5 -> skipBytes(4);
+            case 4, 6 -> skipBytes(8);
+            case 7 -> skipBytes(in.readInt());
+            case STRING -> skipBytes(in.readUnsignedShort());
+            case LIST -> {
+                byte elementType = in.readByte();
+                int length = in.readInt();
+                for (int i = 0; i < length; i++) {
+                    skip(elementType);
+                }
+            }
+            case COMPOUND -> {
+                byte entryType;
+                while ((entryType = in.readByte()) != END) {
+                    skipBytes(in.readUnsignedShort());
+                    skip(entryType);
+                }
+            }
+            case 11 -> skipBytes(in.readInt() * 4L);
+            case 12 -> skipBytes(in.readInt() * 8L);
+            default -> throw new IOException("Unknown NBT tag type " + type);
+        }
+    }
+
+    private void skipBytes(long count) throws IOException {
+        if (count < 0) {
+            throw new IOException("Negative NBT length");
+        }
+        in.skipNBytes(count);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
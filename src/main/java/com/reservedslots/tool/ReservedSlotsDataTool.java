@@ -0,0 +1,243 @@
+package com.reservedslots.tool;
+
+import com.reservedslots.common.SlotState;
+import com.reservedslots.common.StoredLayout;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Command-line maintenance for reserved slot data, runnable without the game:
+ * {@code java -jar reserved-slots.jar <command> ...}. Only this package and the
+ * game-free common classes (StoredLayout, CompactLayoutCodec, SlotState) are used.
+ * Run it against a stopped server's world.
+ */
+public final class ReservedSlotsDataTool {
+    private static final int EXIT_OK = 0;
+    private static final int EXIT_PROBLEMS = 1;
+    private static final int EXIT_USAGE = 2;
+
+    private static final String USAGE = """
+        Usage: java -jar reserved-slots.jar <command> [options]
+
+        <input> is a world directory, its reservedslots/ directory, reservedslots_data.dat
+        or a single player file.
+
+          stats <input>
+              Summarize players, reservations, items and any problems found.
+          validate <input>
+              Like stats, but exits with status 1 if malformed or duplicate entries were found.
+          convert <input> <output-dir> [--format compact|nbt] [--allow <file>] [--drop-namespace <ns>]...
+              Write one file per player to <output-dir> (use it as <world>/reservedslots).
+              Duplicate entries are collapsed, last one wins. --allow keeps only item ids
+              listed in <file> (one per line); --drop-namespace removes a mod's items.
+              Reservations for dropped items are cleared. Default format: compact.
+        """;
+
+    private ReservedSlotsDataTool() {
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    private static int run(String[] args) {
+        if (args.length < 2) {
+            System.err.print(USAGE);
+            return EXIT_USAGE;
+        }
+        try {
+            return switch (args[0]) {
+                case "stats" -> stats(Path.of(args[1]), false);
+                case "validate" -> stats(Path.of(args[1]), true);
+                case "convert" -> convert(args);
+                default -> {
+                    System.err.print(USAGE);
+                    yield EXIT_USAGE;
+                }
+            };
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            return EXIT_USAGE;
+        }
+    }
+
+    private static int stats(Path input, boolean strict) throws IOException {
+        LayoutFiles.Report report = new LayoutFiles.Report();
+        Set<String> players = new HashSet<>();
+        Map<String, Integer> itemCounts = new HashMap<>();
+        int[] counts = new int[5]; // entries, non-empty, reserved, locked, without item
+        int[] formats = new int[LayoutFiles.Format.values().length];
+        int[] duplicatePlayers = new int[1];
+
+        LayoutFiles.read(input, (storageKey, layout, format) -> {
+            counts[0]++;
+            formats[format.ordinal()]++;
+            if (!players.add(storageKey)) {
+                duplicatePlayers[0]++;
+            }
+            if (layout.isEmpty()) {
+                return;
+            }
+            counts[1]++;
+            for (long mask = layout.reservedMask(); mask != 0; mask &= mask - 1) {
+                int index = Long.numberOfTrailingZeros(mask);
+                counts[layout.state(index) == SlotState.LOCKED.ordinal() ? 3 : 2]++;
+                String itemId = layout.itemId(index);
+                if (itemId == null) {
+                    counts[4]++;
+                } else {
+                    itemCounts.merge(itemId, 1, Integer::sum);
+                }
+            }
+        }, report);
+
+        System.out.printf("Players:            %d (%d with reservations)%n", players.size(), counts[1]);
+        System.out.printf("Records read:       %d (%d compact, %d NBT)%n",
+            counts[0], formats[LayoutFiles.Format.COMPACT.ordinal()], formats[LayoutFiles.Format.NBT.ordinal()]);
+        System.out.printf("Reserved slots:     %d%n", counts[2]);
+        System.out.printf("Locked slots:       %d%n", counts[3]);
+        System.out.printf("Slots without item: %d%n", counts[4]);
+        System.out.printf("Distinct items:     %d%n", itemCounts.size());
+
+        List<Map.Entry<String, Integer>> top = new ArrayList<>(itemCounts.entrySet());
+        top.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+        for (int i = 0; i < Math.min(10, top.size()); i++) {
+            System.out.printf("  %6d  %s%n", top.get(i).getValue(), top.get(i).getKey());
+        }
+
+        System.out.printf("Duplicate players:  %d%n", duplicatePlayers[0]);
+        System.out.printf("Duplicate slots:    %d%n", report.duplicateSlots);
+        System.out.printf("Invalid entries:    %d%n", report.invalidEntries);
+        System.out.printf("Unreadable files:   %d%n", report.unreadableFiles);
+        if (report.journalFiles > 0) {
+            System.out.printf("Journal files:      %d (the server did not shut down cleanly; start it once to replay them)%n",
+                report.journalFiles);
+        }
+
+        boolean problems = report.hasProblems() || duplicatePlayers[0] > 0;
+        return strict && problems ? EXIT_PROBLEMS : EXIT_OK;
+    }
+
+    private static int convert(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.print(USAGE);
+            return EXIT_USAGE;
+        }
+        Path input = Path.of(args[1]);
+        Path output = Path.of(args[2]);
+        LayoutFiles.Format format = LayoutFiles.Format.COMPACT;
+        ItemFilter filter = new ItemFilter();
+
+        for (int i = 3; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                System.err.println("Missing value for " + option);
+                return EXIT_USAGE;
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--format" -> {
+                    try {
+                        format = LayoutFiles.Format.valueOf(value.toUpperCase());
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Unknown format " + value);
+                        return EXIT_USAGE;
+                    }
+                }
+                case "--allow" -> filter.allowFrom(Path.of(value));
+                case "--drop-namespace" -> filter.dropNamespace(value);
+                default -> {
+                    System.err.println("Unknown option " + option);
+                    return EXIT_USAGE;
+                }
+            }
+        }
+
+        Files.createDirectories(output);
+        Path inputDirectory = Files.isDirectory(input.resolve(LayoutFiles.DIRECTORY_NAME))
+            ? input.resolve(LayoutFiles.DIRECTORY_NAME) : input;
+        if (Files.isDirectory(inputDirectory) && Files.isSameFile(inputDirectory, output)) {
+            System.err.println("Output directory must differ from the input");
+            return EXIT_USAGE;
+        }
+
+        LayoutFiles.Format outputFormat = format;
+        LayoutFiles.Report report = new LayoutFiles.Report();
+        int[] written = new int[2]; // players written, slots cleared
+        List<String> failed = new ArrayList<>();
+
+        LayoutFiles.read(input, (storageKey, layout, sourceFormat) -> {
+            StoredLayout filtered = layout;
+            for (long mask = layout.reservedMask(); mask != 0; mask &= mask - 1) {
+                int index = Long.numberOfTrailingZeros(mask);
+                String itemId = layout.itemId(index);
+                if (itemId != null && !filter.keeps(itemId)) {
+                    filtered = filtered.withSlot(index, SlotState.NORMAL.ordinal(), null);
+                    written[1]++;
+                }
+            }
+            try {
+                // A later duplicate simply overwrites the earlier file
+                LayoutFiles.write(output, storageKey, filtered, outputFormat);
+                written[0]++;
+            } catch (IOException e) {
+                failed.add(storageKey);
+                System.err.println("Failed to write " + storageKey + ": " + e.getMessage());
+            }
+        }, report);
+
+        System.out.printf("Wrote %d player records to %s (%s), cleared %d reservations for dropped items%n",
+            written[0], output, outputFormat.name().toLowerCase(), written[1]);
+        System.out.printf("Dropped %d invalid entries and %d duplicate slots; %d files were unreadable%n",
+            report.invalidEntries, report.duplicateSlots, report.unreadableFiles);
+        if (report.journalFiles > 0) {
+            System.err.println("Warning: the input has journal files with changes not yet in the player files. "
+                + "Start and stop the server once before converting.");
+        }
+        return failed.isEmpty() && report.unreadableFiles == 0 ? EXIT_OK : EXIT_PROBLEMS;
+    }
+
+    /**
+     * Decides which reserved item ids survive a conversion.
+     */
+    private static final class ItemFilter {
+        private Set<String> allowed;
+        private final Set<String> droppedNamespaces = new HashSet<>();
+
+        void allowFrom(Path file) throws IOException {
+            if (allowed == null) {
+                allowed = new HashSet<>();
+            }
+            for (String line : Files.readAllLines(file)) {
+                String id = line.strip();
+                if (!id.isEmpty() && !id.startsWith("#")) {
+                    allowed.add(normalize(id));
+                }
+            }
+        }
+
+        void dropNamespace(String namespace) {
+            droppedNamespaces.add(namespace);
+        }
+
+        boolean keeps(String itemId) {
+            String id = normalize(itemId);
+            if (droppedNamespaces.contains(id.substring(0, id.indexOf(':')))) {
+                return false;
+            }
+            return allowed == null || allowed.contains(id);
+        }
+
+        private static String normalize(String id) {
+            return id.indexOf(':') < 0 ? "minecraft:" + id : id;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.reservedslots.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompactLayoutCodecTest {
+    private static final int RESERVED = SlotState.RESERVED.ordinal();
+    private static final int LOCKED = SlotState.LOCKED.ordinal();
+
+    private static byte[] encode(StoredLayout layout) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CompactLayoutCodec.write(layout, new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static StoredLayout decode(byte[] data) throws IOException {
+        return CompactLayoutCodec.read(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+    @Test
+    void roundTripsEveryStateAndItem() throws IOException {
+        StoredLayout layout = StoredLayout.EMPTY
+                .withSlot(0, RESERVED, "minecraft:diamond_sword")
+                .withSlot(8, LOCKED, "minecraft:torch")
+                .withSlot(17, RESERVED, null)
+                .withSlot(35, LOCKED, "somemod:widget")
+                .withSlot(40, RESERVED, "minecraft:diamond_sword");
+
+        byte[] data = encode(layout);
+
+        assertTrue(CompactLayoutCodec.isCompact(data));
+        assertEquals(layout, decode(data));
+        assertTrue(data.length < 80, "repeated items share a palette entry, was " + data.length + " bytes");
+    }
+
+    @Test
+    void roundTripsAnEmptyLayout() throws IOException {
+        byte[] data = encode(StoredLayout.EMPTY);
+
+        // Magic, version, mask and an empty palette
+        assertEquals(3 + 1 + 6 + 1, data.length);
+        assertEquals(StoredLayout.EMPTY, decode(data));
+    }
+
+    @Test
+    void rejectsBadMagic() throws IOException {
+        byte[] data = encode(StoredLayout.EMPTY.withSlot(3, RESERVED, "minecraft:stone"));
+        data[0] = 'X';
+
+        assertFalse(CompactLayoutCodec.isCompact(data));
+        IOException e = assertThrows(IOException.class, () -> decode(data));
+        assertEquals("Not a compact reserved slot layout", e.getMessage());
+    }
+
+    @Test
+    void doesNotMistakeGzipForCompact() {
+        assertFalse(CompactLayoutCodec.isCompact(new byte[] {0x1f, (byte) 0x8b, 8, 0, 0, 0}));
+        assertFalse(CompactLayoutCodec.isCompact(new byte[] {'R', 'S', 'L'}));
+    }
+
+    @Test
+    void rejectsUnknownVersions() throws IOException {
+        byte[] data = encode(StoredLayout.EMPTY);
+        data[3] = (byte) (CompactLayoutCodec.VERSION + 1);
+
+        assertThrows(IOException.class, () -> decode(data));
+    }
+
+    @Test
+    void rejectsSlotsBeyondTheLayout() throws IOException {
+        byte[] data = encode(StoredLayout.EMPTY);
+        data[4] = (byte) 0x80; // Top bit of the 48-bit mask
+
+        assertThrows(IOException.class, () -> decode(data));
+    }
+
+    @Test
+    void rejectsTruncatedData() throws IOException {
+        byte[] data = encode(StoredLayout.EMPTY.withSlot(3, RESERVED, "minecraft:stone"));
+        byte[] truncated = Arrays.copyOf(data, data.length - 4);
+
+        assertThrows(EOFException.class, () -> decode(truncated));
+    }
+}
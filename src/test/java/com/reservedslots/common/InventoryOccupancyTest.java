@@ -0,0 +1,101 @@
+package com.reservedslots.common;
+
+import net.minecraft.SharedConstants;
+import net.minecraft.server.Bootstrap;
+import net.minecraft.world.SimpleContainer;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class InventoryOccupancyTest {
+    @BeforeAll
+    static void bootstrap() {
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+    }
+
+    @Test
+    void refreshClassifiesEverySlot() {
+        SimpleContainer inventory = new SimpleContainer(PlayerSlotLayout.SIZE);
+        inventory.setItem(0, new ItemStack(Items.COBBLESTONE, 10));
+        inventory.setItem(1, new ItemStack(Items.COBBLESTONE, 64));
+        inventory.setItem(40, new ItemStack(Items.SHIELD));
+
+        InventoryOccupancy occupancy = new InventoryOccupancy().refresh(inventory);
+
+        assertEquals(1L << 0, occupancy.partialMask());
+        assertEquals(1L << 1 | 1L << 40, occupancy.fullMask());
+        assertEquals(((1L << PlayerSlotLayout.SIZE) - 1) & ~(1L << 0 | 1L << 1 | 1L << 40), occupancy.emptyMask());
+    }
+
+    @Test
+    void updateMovesOneSlotAndBumpsTheVersionOnlyOnChange() {
+        SimpleContainer inventory = new SimpleContainer(PlayerSlotLayout.SIZE);
+        InventoryOccupancy occupancy = new InventoryOccupancy().refresh(inventory);
+        int version = occupancy.version();
+
+        occupancy.update(3, new ItemStack(Items.DIRT, 5));
+        assertEquals(1L << 3, occupancy.partialMask());
+        assertEquals(0, occupancy.emptyMask() & 1L << 3);
+        assertNotEquals(version, occupancy.version());
+
+        version = occupancy.version();
+        occupancy.update(3, new ItemStack(Items.DIRT, 6));
+        assertEquals(version, occupancy.version(), "still partial, nothing derived from the masks is stale");
+
+        occupancy.update(3, ItemStack.EMPTY);
+        assertEquals(0, occupancy.partialMask());
+        assertEquals(1L << 3, occupancy.emptyMask() & 1L << 3);
+    }
+
+    @Test
+    void inPlaceCountChangesReachTheMasks() {
+        SimpleContainer inventory = new SimpleContainer(PlayerSlotLayout.SIZE);
+        InventoryOccupancy occupancy = new InventoryOccupancy().refresh(inventory);
+        ItemStack stack = new ItemStack(Items.COBBLESTONE, 64);
+        inventory.setItem(7, stack);
+        occupancy.update(7, stack);
+        assertEquals(1L << 7, occupancy.fullMask());
+
+        stack.shrink(1);
+        assertEquals(1L << 7, occupancy.partialMask());
+        assertEquals(0, occupancy.fullMask());
+
+        stack.shrink(63);
+        assertEquals(0, occupancy.partialMask());
+        assertEquals(1L << 7, occupancy.emptyMask() & 1L << 7);
+    }
+
+    @Test
+    void stacksThatLeftTheSlotAreIgnored() {
+        SimpleContainer inventory = new SimpleContainer(PlayerSlotLayout.SIZE);
+        InventoryOccupancy occupancy = new InventoryOccupancy().refresh(inventory);
+        ItemStack moved = new ItemStack(Items.COBBLESTONE, 64);
+        occupancy.update(2, moved);
+        occupancy.update(2, new ItemStack(Items.DIRT, 64));
+
+        moved.shrink(10);
+
+        assertEquals(1L << 2, occupancy.fullMask());
+        assertEquals(0, occupancy.partialMask());
+    }
+
+    @Test
+    void markDirtyRescansOnTheNextRefresh() {
+        SimpleContainer inventory = new SimpleContainer(PlayerSlotLayout.SIZE);
+        InventoryOccupancy occupancy = new InventoryOccupancy().refresh(inventory);
+
+        // Written behind the occupancy's back, like loading the item list directly
+        inventory.setItem(5, new ItemStack(Items.DIRT, 3));
+        occupancy.refresh(inventory);
+        assertEquals(0, occupancy.partialMask());
+
+        occupancy.markDirty();
+        occupancy.refresh(inventory);
+        assertEquals(1L << 5, occupancy.partialMask());
+    }
+}
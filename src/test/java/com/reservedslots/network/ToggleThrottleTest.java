@@ -0,0 +1,99 @@
+package com.reservedslots.network;
+
+import com.reservedslots.ReservedSlotsConfig;
+import com.reservedslots.common.SlotState;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ToggleThrottleTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    void bucketAdmitsOneBurstThenRefuses() {
+        long now = 5 * SECOND;
+        ToggleThrottle.PlayerToggles toggles = new ToggleThrottle.PlayerToggles(now);
+
+        for (int i = 0; i < ReservedSlotsConfig.toggleBurst(); i++) {
+            assertTrue(toggles.tryAcquire(now), "toggle " + i + " of the burst");
+        }
+        assertFalse(toggles.tryAcquire(now));
+    }
+
+    @Test
+    void bucketRefillsAtTheConfiguredRate() {
+        long now = 5 * SECOND;
+        ToggleThrottle.PlayerToggles toggles = new ToggleThrottle.PlayerToggles(now);
+        while (toggles.tryAcquire(now)) {
+            // Drain the burst
+        }
+
+        long interval = SECOND / ReservedSlotsConfig.toggleRate();
+        assertFalse(toggles.tryAcquire(now + interval / 2));
+        assertTrue(toggles.tryAcquire(now + interval));
+        assertFalse(toggles.tryAcquire(now + interval));
+    }
+
+    @Test
+    void bucketNeverHoldsMoreThanOneBurst() {
+        long now = 5 * SECOND;
+        ToggleThrottle.PlayerToggles toggles = new ToggleThrottle.PlayerToggles(now);
+        now += 3600 * SECOND;
+
+        int admitted = 0;
+        while (toggles.tryAcquire(now)) {
+            admitted++;
+        }
+        assertEquals(ReservedSlotsConfig.toggleBurst(), admitted);
+    }
+
+    @Test
+    void stackedSlotsCoalesceModuloTheCycle() {
+        for (SlotState state : SlotState.values()) {
+            assertEquals(0, ToggleThrottle.effectiveToggles(state, false, 3));
+            assertEquals(1, ToggleThrottle.effectiveToggles(state, false, 4));
+            assertEquals(2, ToggleThrottle.effectiveToggles(state, false, 8));
+        }
+    }
+
+    @Test
+    void emptySlotsStopAtNormal() {
+        assertEquals(0, ToggleThrottle.effectiveToggles(SlotState.NORMAL, true, 5));
+        assertEquals(1, ToggleThrottle.effectiveToggles(SlotState.LOCKED, true, 4));
+        assertEquals(1, ToggleThrottle.effectiveToggles(SlotState.RESERVED, true, 1));
+        assertEquals(2, ToggleThrottle.effectiveToggles(SlotState.RESERVED, true, 7));
+    }
+
+    @Test
+    void coalescedTogglesEndInTheSameStateAsOneByOne() {
+        for (SlotState start : SlotState.values()) {
+            for (boolean empty : new boolean[] {false, true}) {
+                for (int count = 0; count <= 9; count++) {
+                    SlotState oneByOne = start;
+                    for (int i = 0; i < count; i++) {
+                        oneByOne = toggle(oneByOne, empty);
+                    }
+                    SlotState coalesced = start;
+                    for (int i = ToggleThrottle.effectiveToggles(start, empty, count); i > 0; i--) {
+                        coalesced = toggle(coalesced, empty);
+                    }
+                    assertEquals(oneByOne, coalesced, start + (empty ? " empty" : " stacked") + " x" + count);
+                }
+            }
+        }
+    }
+
+    /**
+     * One ReservedSlotManager.toggleSlot step: NORMAL -> RESERVED -> LOCKED -> NORMAL, except
+     * that an empty slot has no item to reserve.
+     */
+    private static SlotState toggle(SlotState state, boolean empty) {
+        return switch (state) {
+            case NORMAL -> empty ? SlotState.NORMAL : SlotState.RESERVED;
+            case RESERVED -> SlotState.LOCKED;
+            case LOCKED -> SlotState.NORMAL;
+        };
+    }
+}
@@ -0,0 +1,104 @@
+package com.reservedslots.server;
+
+import com.reservedslots.common.InventoryOccupancy;
+import com.reservedslots.common.PlayerSlotLayout;
+import net.minecraft.SharedConstants;
+import net.minecraft.core.component.DataComponents;
+import net.minecraft.network.chat.Component;
+import net.minecraft.server.Bootstrap;
+import net.minecraft.world.SimpleContainer;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PlacementMemoTest {
+    @BeforeAll
+    static void bootstrap() {
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+    }
+
+    private static int get(PlacementMemo memo, ItemStack stack) {
+        return memo.get(stack, ItemStack.hashItemAndComponents(stack));
+    }
+
+    private static void put(PlacementMemo memo, ItemStack stack, int result) {
+        memo.put(stack, ItemStack.hashItemAndComponents(stack), result);
+    }
+
+    @Test
+    void hitsOnlyTheSameItemAndComponents() {
+        PlacementMemo memo = new PlacementMemo();
+        memo.validate(1, 1, 1);
+        put(memo, new ItemStack(Items.COBBLESTONE, 12), 4);
+        put(memo, new ItemStack(Items.DIRT), -1);
+
+        assertEquals(4, get(memo, new ItemStack(Items.COBBLESTONE, 64)), "the count isn't part of the key");
+        assertEquals(-1, get(memo, new ItemStack(Items.DIRT)));
+        assertEquals(PlacementMemo.MISS, get(memo, new ItemStack(Items.STONE)));
+
+        ItemStack named = new ItemStack(Items.COBBLESTONE);
+        named.set(DataComponents.CUSTOM_NAME, Component.literal("Named"));
+        assertEquals(PlacementMemo.MISS, get(memo, named));
+    }
+
+    @Test
+    void storedKeysDontFollowTheCallersStack() {
+        PlacementMemo memo = new PlacementMemo();
+        memo.validate(1, 1, 1);
+        ItemStack stack = new ItemStack(Items.COBBLESTONE, 12);
+        put(memo, stack, 4);
+
+        stack.set(DataComponents.CUSTOM_NAME, Component.literal("Renamed"));
+
+        assertEquals(4, get(memo, new ItemStack(Items.COBBLESTONE)));
+    }
+
+    @Test
+    void anyChangedInputDropsEveryEntry() {
+        PlacementMemo memo = new PlacementMemo();
+        ItemStack stack = new ItemStack(Items.COBBLESTONE);
+
+        memo.validate(1, 1, 1);
+        put(memo, stack, -1);
+        memo.validate(1, 1, 1);
+        assertEquals(-1, get(memo, stack));
+
+        memo.validate(2, 1, 1);
+        assertEquals(PlacementMemo.MISS, get(memo, stack), "inventory change counter");
+
+        put(memo, stack, -1);
+        memo.validate(2, 2, 1);
+        assertEquals(PlacementMemo.MISS, get(memo, stack), "occupancy version");
+
+        put(memo, stack, -1);
+        memo.validate(2, 2, 2);
+        assertEquals(PlacementMemo.MISS, get(memo, stack), "layout version");
+    }
+
+    @Test
+    void inPlaceShrinkInvalidatesACachedNoRoom() {
+        SimpleContainer inventory = new SimpleContainer(PlayerSlotLayout.SIZE);
+        for (int i = 0; i < PlayerSlotLayout.SIZE; i++) {
+            inventory.setItem(i, new ItemStack(Items.COBBLESTONE, 64));
+        }
+        InventoryOccupancy occupancy = new InventoryOccupancy().refresh(inventory);
+        PlayerSlotLayout layout = new PlayerSlotLayout();
+        PlacementMemo memo = new PlacementMemo();
+        ItemStack incoming = new ItemStack(Items.COBBLESTONE);
+
+        memo.validate(0, occupancy.version(), layout.version());
+        put(memo, incoming, SlotPlacementEngine.findBestSlot(layout, occupancy, inventory, incoming));
+        assertEquals(-1, get(memo, incoming));
+
+        // Placing a block shrinks the held stack without going through setItem
+        inventory.getItem(12).shrink(1);
+
+        memo.validate(0, occupancy.version(), layout.version());
+        assertEquals(PlacementMemo.MISS, get(memo, incoming));
+        assertEquals(12, SlotPlacementEngine.findBestSlot(layout, occupancy, inventory, incoming));
+    }
+}
@@ -0,0 +1,105 @@
+package com.reservedslots.server;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SlotJournalTest {
+    @TempDir
+    Path directory;
+
+    private int replay(List<String> into) {
+        return SlotJournal.replay(directory, (key, slot, state, item) -> into.add(key + " " + slot + " " + state + " " + item));
+    }
+
+    @Test
+    void replaysRecordsInOrder() throws IOException {
+        SlotJournal journal = new SlotJournal(directory, 3);
+        journal.append("Alice", 0, 2, "minecraft:diamond_sword");
+        journal.append("Bob", 8, 1, "minecraft:torch");
+        journal.append("Alice", 0, 0, null);
+        journal.close();
+
+        List<String> replayed = new ArrayList<>();
+        assertEquals(3, replay(replayed));
+        assertEquals(List.of(
+                "Alice 0 2 minecraft:diamond_sword",
+                "Bob 8 1 minecraft:torch",
+                "Alice 0 0 null"), replayed);
+    }
+
+    @Test
+    void tornTailEndsTheReplayOfThatFile() throws IOException {
+        SlotJournal journal = new SlotJournal(directory, 0);
+        journal.append("Alice", 0, 2, "minecraft:diamond_sword");
+        journal.append("Alice", 1, 2, "minecraft:diamond_sword");
+        journal.close();
+
+        // A crash halfway through the next append: record type, key id and part of the rest
+        Path file = directory.resolve("journal-0.log");
+        byte[] intact = Files.readAllBytes(file);
+        Files.write(file, new byte[] {'S', 0, 0, 0, 0, 5}, StandardOpenOption.APPEND);
+
+        List<String> replayed = new ArrayList<>();
+        assertEquals(0, replay(replayed));
+        assertEquals(List.of(
+                "Alice 0 2 minecraft:diamond_sword",
+                "Alice 1 2 minecraft:diamond_sword"), replayed);
+
+        // Cut inside the last complete record instead
+        Files.write(file, Arrays.copyOf(intact, intact.length - 3));
+        replayed.clear();
+        replay(replayed);
+        assertEquals(List.of("Alice 0 2 minecraft:diamond_sword"), replayed);
+    }
+
+    @Test
+    void tornTailDoesntStopLaterGenerations() throws IOException {
+        SlotJournal journal = new SlotJournal(directory, 0);
+        journal.append("Alice", 0, 2, "minecraft:stone");
+        int sealed = journal.rotate();
+        journal.append("Alice", 1, 1, "minecraft:dirt");
+        journal.close();
+        assertEquals(0, sealed);
+
+        Path first = directory.resolve("journal-0.log");
+        byte[] bytes = Files.readAllBytes(first);
+        Files.write(first, Arrays.copyOf(bytes, bytes.length - 1));
+
+        List<String> replayed = new ArrayList<>();
+        assertEquals(1, replay(replayed));
+        assertEquals(List.of("Alice 1 1 minecraft:dirt"), replayed);
+    }
+
+    @Test
+    void rotatedGenerationsDefineTheirOwnKeysAndCanBeDeleted() throws IOException {
+        SlotJournal journal = new SlotJournal(directory, 0);
+        journal.append("Alice", 0, 2, "minecraft:stone");
+        int sealed = journal.rotate();
+        journal.append("Alice", 4, 2, "minecraft:stone");
+        journal.deleteUpTo(sealed);
+        journal.close();
+
+        assertFalse(Files.exists(directory.resolve("journal-0.log")));
+        assertTrue(Files.exists(directory.resolve("journal-1.log")));
+        List<String> replayed = new ArrayList<>();
+        assertEquals(1, replay(replayed));
+        assertEquals(List.of("Alice 4 2 minecraft:stone"), replayed);
+    }
+
+    @Test
+    void nothingToReplay() {
+        assertEquals(-1, replay(new ArrayList<>()));
+    }
+}
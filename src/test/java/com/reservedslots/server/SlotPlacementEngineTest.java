@@ -0,0 +1,233 @@
+package com.reservedslots.server;
+
+import com.reservedslots.common.InventoryOccupancy;
+import com.reservedslots.common.PlayerSlotLayout;
+import com.reservedslots.common.SlotState;
+import net.minecraft.SharedConstants;
+import net.minecraft.server.Bootstrap;
+import net.minecraft.world.SimpleContainer;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SlotPlacementEngineTest {
+    private static final long ALL_SLOTS = (1L << PlayerSlotLayout.SIZE) - 1;
+
+    private SimpleContainer inventory;
+    private PlayerSlotLayout layout;
+
+    @BeforeAll
+    static void bootstrap() {
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+    }
+
+    @BeforeEach
+    void setUp() {
+        inventory = new SimpleContainer(PlayerSlotLayout.SIZE);
+        layout = new PlayerSlotLayout();
+    }
+
+    private int findBestSlot(ItemStack stack) {
+        return SlotPlacementEngine.findBestSlot(layout, occupancy(), inventory, stack);
+    }
+
+    private InventoryOccupancy occupancy() {
+        return new InventoryOccupancy().refresh(inventory);
+    }
+
+    /**
+     * Fills every main inventory slot except the given ones with full stacks of dirt.
+     */
+    private void fillMainExcept(int... open) {
+        for (int i = 0; i < InventoryOccupancy.MAIN_SIZE; i++) {
+            int slot = i;
+            if (Arrays.stream(open).noneMatch(o -> o == slot)) {
+                inventory.setItem(i, new ItemStack(Items.DIRT, 64));
+            }
+        }
+    }
+
+    @Test
+    void lockedPartialStackComesFirst() {
+        inventory.setItem(0, new ItemStack(Items.COBBLESTONE, 10));
+        inventory.setItem(3, new ItemStack(Items.COBBLESTONE, 10));
+        inventory.setItem(5, new ItemStack(Items.COBBLESTONE, 10));
+        layout.set(3, SlotState.RESERVED, Items.COBBLESTONE);
+        layout.set(5, SlotState.LOCKED, Items.COBBLESTONE);
+
+        assertEquals(5, findBestSlot(new ItemStack(Items.COBBLESTONE)));
+
+        layout.set(5, SlotState.NORMAL, null);
+        assertEquals(3, findBestSlot(new ItemStack(Items.COBBLESTONE)));
+
+        layout.set(3, SlotState.NORMAL, null);
+        assertEquals(0, findBestSlot(new ItemStack(Items.COBBLESTONE)));
+    }
+
+    @Test
+    void partialStacksBeatEmptyMatchingSlots() {
+        inventory.setItem(7, new ItemStack(Items.COBBLESTONE, 10));
+        layout.set(2, SlotState.LOCKED, Items.COBBLESTONE);
+
+        assertEquals(7, findBestSlot(new ItemStack(Items.COBBLESTONE)));
+    }
+
+    @Test
+    void emptySlotsGoLockedThenReservedThenNormalThenFallback() {
+        fillMainExcept(2, 4, 6, 10);
+        layout.set(2, SlotState.RESERVED, Items.DIAMOND);
+        layout.set(4, SlotState.RESERVED, Items.COBBLESTONE);
+        layout.set(6, SlotState.LOCKED, Items.COBBLESTONE);
+        ItemStack cobblestone = new ItemStack(Items.COBBLESTONE);
+
+        assertEquals(6, findBestSlot(cobblestone));
+
+        inventory.setItem(6, new ItemStack(Items.COBBLESTONE, 64));
+        assertEquals(4, findBestSlot(cobblestone));
+
+        inventory.setItem(4, new ItemStack(Items.COBBLESTONE, 64));
+        assertEquals(10, findBestSlot(cobblestone));
+
+        inventory.setItem(10, new ItemStack(Items.DIRT, 64));
+        assertEquals(2, findBestSlot(cobblestone), "reserved slots for other items are the last resort");
+    }
+
+    @Test
+    void otherItemsNeverGoIntoLockedSlots() {
+        fillMainExcept(1, 8);
+        layout.set(1, SlotState.LOCKED, Items.DIAMOND);
+        layout.set(8, SlotState.LOCKED, Items.COBBLESTONE);
+
+        assertEquals(-1, findBestSlot(new ItemStack(Items.STONE)));
+        assertEquals(1, findBestSlot(new ItemStack(Items.DIAMOND)));
+    }
+
+    @Test
+    void withoutLayoutTheFirstPartialThenEmptySlotWins() {
+        inventory.setItem(0, new ItemStack(Items.DIRT, 64));
+        inventory.setItem(9, new ItemStack(Items.COBBLESTONE, 10));
+        ItemStack cobblestone = new ItemStack(Items.COBBLESTONE);
+
+        assertEquals(9, SlotPlacementEngine.findBestSlot(null, occupancy(), inventory, cobblestone));
+
+        inventory.setItem(9, new ItemStack(Items.COBBLESTONE, 64));
+        assertEquals(1, SlotPlacementEngine.findBestSlot(null, occupancy(), inventory, cobblestone));
+    }
+
+    @Test
+    void planSplitsAStackInPriorityOrder() {
+        inventory.setItem(0, new ItemStack(Items.COBBLESTONE, 50));
+        inventory.setItem(5, new ItemStack(Items.COBBLESTONE, 60));
+        layout.set(5, SlotState.RESERVED, Items.COBBLESTONE);
+        layout.set(8, SlotState.RESERVED, Items.COBBLESTONE);
+        ItemStack stack = new ItemStack(Items.COBBLESTONE, 64);
+        PlacementPlan plan = new PlacementPlan();
+
+        SlotPlacementEngine.plan(layout, occupancy(), inventory, stack, ALL_SLOTS, plan);
+
+        assertEquals(3, plan.size());
+        assertEquals(5, plan.slot(0));
+        assertEquals(4, plan.count(0));
+        assertEquals(0, plan.slot(1));
+        assertEquals(14, plan.count(1));
+        assertEquals(8, plan.slot(2));
+        assertEquals(46, plan.count(2));
+        assertEquals(64, plan.total());
+        assertEquals(64, stack.getCount(), "planning doesn't touch the stack");
+    }
+
+    @Test
+    void planStopsWhenTheInventoryIsFull() {
+        fillMainExcept(20);
+        ItemStack stack = new ItemStack(Items.COBBLESTONE, 100);
+        PlacementPlan plan = new PlacementPlan();
+
+        SlotPlacementEngine.plan(layout, occupancy(), inventory, stack, InventoryOccupancy.MAIN_MASK, plan);
+
+        assertEquals(1, plan.size());
+        assertEquals(20, plan.slot(0));
+        assertEquals(64, plan.total());
+    }
+
+    @Test
+    void planKeepsToAllowedSlotsAndTheirLimits() {
+        int[] limits = new int[PlayerSlotLayout.SIZE];
+        Arrays.fill(limits, 64);
+        limits[36] = 1;
+        limits[37] = 1;
+        limits[38] = 0;
+        long allowed = 1L << 36 | 1L << 37 | 1L << 38;
+        PlacementPlan plan = new PlacementPlan();
+
+        SlotPlacementEngine.plan(layout, occupancy(), inventory, new ItemStack(Items.COBBLESTONE, 5),
+                allowed, limits, plan);
+
+        // Armor slots only take items reserved for them
+        assertEquals(0, plan.total());
+
+        layout.set(36, SlotState.RESERVED, Items.COBBLESTONE);
+        layout.set(37, SlotState.RESERVED, Items.COBBLESTONE);
+        layout.set(38, SlotState.RESERVED, Items.COBBLESTONE);
+        SlotPlacementEngine.plan(layout, occupancy(), inventory, new ItemStack(Items.COBBLESTONE, 5),
+                allowed, limits, plan);
+
+        assertEquals(2, plan.size());
+        assertEquals(36, plan.slot(0));
+        assertEquals(1, plan.count(0));
+        assertEquals(37, plan.slot(1));
+        assertEquals(1, plan.count(1));
+    }
+
+    @Test
+    void stackingSkipsOtherItemsReservedSlotsWhileThereIsRoom() {
+        inventory.setItem(0, new ItemStack(Items.COBBLESTONE, 10));
+        inventory.setItem(5, new ItemStack(Items.COBBLESTONE, 10));
+        layout.set(0, SlotState.RESERVED, Items.DIAMOND);
+        ItemStack cobblestone = new ItemStack(Items.COBBLESTONE);
+
+        assertEquals(5, SlotPlacementEngine.findStackingSlot(layout, occupancy(), inventory, cobblestone));
+
+        inventory.setItem(5, new ItemStack(Items.COBBLESTONE, 64));
+        assertEquals(-1, SlotPlacementEngine.findStackingSlot(layout, occupancy(), inventory, cobblestone));
+    }
+
+    @Test
+    void stackingUsesOtherItemsReservedSlotsOnceTheRestIsFull() {
+        fillMainExcept(0, 3);
+        inventory.setItem(0, new ItemStack(Items.COBBLESTONE, 10));
+        layout.set(0, SlotState.RESERVED, Items.DIAMOND);
+        layout.set(3, SlotState.LOCKED, Items.DIAMOND);
+        InventoryOccupancy occupancy = occupancy();
+
+        // The empty slot left is locked, so it doesn't count as room
+        assertTrue(SlotPlacementEngine.isFullExcludingReserved(layout, occupancy));
+        assertEquals(0, SlotPlacementEngine.findStackingSlot(layout, occupancy, inventory, new ItemStack(Items.COBBLESTONE)));
+    }
+
+    @Test
+    void stackingNeverUsesOtherItemsLockedSlots() {
+        fillMainExcept(0);
+        inventory.setItem(0, new ItemStack(Items.COBBLESTONE, 10));
+        layout.set(0, SlotState.LOCKED, Items.DIAMOND);
+
+        assertEquals(-1, SlotPlacementEngine.findStackingSlot(layout, occupancy(), inventory, new ItemStack(Items.COBBLESTONE)));
+    }
+
+    @Test
+    void stackingPrefersTheLowestMatchingSlot() {
+        inventory.setItem(2, new ItemStack(Items.COBBLESTONE, 10));
+        inventory.setItem(6, new ItemStack(Items.COBBLESTONE, 10));
+        layout.set(2, SlotState.LOCKED, Items.COBBLESTONE);
+
+        assertEquals(2, SlotPlacementEngine.findStackingSlot(layout, occupancy(), inventory, new ItemStack(Items.COBBLESTONE)));
+        assertEquals(2, SlotPlacementEngine.findStackingSlot(null, occupancy(), inventory, new ItemStack(Items.COBBLESTONE)));
+    }
+}
@@ -0,0 +1,146 @@
+package com.reservedslots.server;
+
+import com.reservedslots.common.InventoryOccupancy;
+import com.reservedslots.common.PlayerSlotLayout;
+import com.reservedslots.common.SlotState;
+import net.minecraft.SharedConstants;
+import net.minecraft.server.Bootstrap;
+import net.minecraft.world.Container;
+import net.minecraft.world.SimpleContainer;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.IntSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Before/after harness for the getSlotWithRemainingSpace worst case: partial stacks sitting
+ * in slots reserved for another item, plus one empty normal slot so the reserved-overflow
+ * rule never applies and every candidate is rejected.
+ *
+ * The old hook re-scanned the main inventory for each such candidate, so its slot reads
+ * grow with (reserved slots x 36); findStackingSlot must stay within one read per slot.
+ * Reads are counted exactly and asserted, timings are only printed. Run with
+ * {@code ./gradlew benchmark}.
+ */
+@Tag("benchmark")
+class StackingQueryBenchmark {
+    private static final int MAIN_SIZE = InventoryOccupancy.MAIN_SIZE;
+    private static final int ITERATIONS = 200_000;
+
+    @BeforeAll
+    static void bootstrap() {
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+    }
+
+    @Test
+    void worstCaseIsLinearInSlots() {
+        ItemStack incoming = new ItemStack(Items.COBBLESTONE);
+        System.out.printf("%8s %13s %12s %14s %13s%n",
+                "reserved", "reads before", "reads after", "ns/op before", "ns/op after");
+
+        for (int reserved = 5; reserved < MAIN_SIZE; reserved += 10) {
+            CountingContainer inventory = new CountingContainer();
+            PlayerSlotLayout layout = new PlayerSlotLayout();
+            for (int i = 0; i < MAIN_SIZE - 1; i++) {
+                if (i < reserved) {
+                    layout.set(i, SlotState.RESERVED, Items.DIAMOND);
+                    inventory.setItem(i, new ItemStack(Items.COBBLESTONE, 10));
+                } else {
+                    inventory.setItem(i, new ItemStack(Items.DIRT, 64));
+                }
+            }
+            InventoryOccupancy occupancy = new InventoryOccupancy().refresh(inventory);
+
+            inventory.reads = 0;
+            assertEquals(-1, legacyFindStackingSlot(layout, inventory, incoming));
+            int readsBefore = inventory.reads;
+
+            inventory.reads = 0;
+            assertEquals(-1, SlotPlacementEngine.findStackingSlot(layout, occupancy, inventory, incoming));
+            int readsAfter = inventory.reads;
+
+            assertEquals(MAIN_SIZE + reserved * MAIN_SIZE, readsBefore);
+            assertTrue(readsAfter <= MAIN_SIZE, "findStackingSlot read " + readsAfter + " slots");
+
+            double before = nanosPerOp(() -> legacyFindStackingSlot(layout, inventory, incoming));
+            double after = nanosPerOp(() -> SlotPlacementEngine.findStackingSlot(layout, occupancy, inventory, incoming));
+            System.out.printf("%8d %13d %12d %14.1f %13.1f%n", reserved, readsBefore, readsAfter, before, after);
+        }
+    }
+
+    private static double nanosPerOp(IntSupplier query) {
+        int sink = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += query.getAsInt(); // warm-up
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += query.getAsInt();
+        }
+        long elapsed = System.nanoTime() - start;
+        assertTrue(sink != 0); // keeps the results live
+        return (double) elapsed / ITERATIONS;
+    }
+
+    /**
+     * The getSlotWithRemainingSpace hook as it was before the predicate was hoisted, with
+     * the layout standing in for the per-slot map lookups.
+     */
+    private static int legacyFindStackingSlot(PlayerSlotLayout layout, Container inventory, ItemStack stack) {
+        for (int i = 0; i < MAIN_SIZE; i++) {
+            ItemStack current = inventory.getItem(i);
+            if (!current.isEmpty()
+                    && ItemStack.isSameItemSameComponents(current, stack)
+                    && current.getCount() < current.getMaxStackSize()) {
+                if (!legacyCanSlotAcceptItem(layout, inventory, i, stack)) {
+                    continue;
+                }
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean legacyCanSlotAcceptItem(PlayerSlotLayout layout, Container inventory, int slot,
+                                                   ItemStack stack) {
+        switch (layout.getState(slot)) {
+            case RESERVED:
+                return layout.matches(slot, stack) || legacyInventoryFull(layout, inventory);
+            case LOCKED:
+                return layout.matches(slot, stack);
+            default:
+                return true;
+        }
+    }
+
+    private static boolean legacyInventoryFull(PlayerSlotLayout layout, Container inventory) {
+        int available = 0;
+        for (int i = 0; i < MAIN_SIZE; i++) {
+            if (inventory.getItem(i).isEmpty() && layout.getState(i) != SlotState.LOCKED) {
+                available++;
+            }
+        }
+        return available == 0;
+    }
+
+    private static final class CountingContainer extends SimpleContainer {
+        int reads;
+
+        CountingContainer() {
+            super(PlayerSlotLayout.SIZE);
+        }
+
+        @Override
+        public ItemStack getItem(int slot) {
+            reads++;
+            return super.getItem(slot);
+        }
+    }
+}